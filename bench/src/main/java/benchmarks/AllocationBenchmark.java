@@ -0,0 +1,81 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import image.Image;
+import image.LuminanceKernel;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures averaging the brightness of every sub-image, through the Iterable based API and through the
+ * primitive visitor API. Run with JMH's allocation profiler to see the bytes allocated per operation,
+ * which divided by the 4M pixels or the 64K sub-images of the image gives the bytes per pixel and per
+ * sub-image. chooseChars includes its summed-area table, 8 bytes per pixel.
+ * Run with {@code java -jar bench/target/benchmarks.jar AllocationBenchmark -prof gc}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class AllocationBenchmark {
+    private static final int SIZE = 2048;
+    private static final int SUB_IMAGE_SIZE = 8;
+    private static final Character[] CHAR_SET = {'0', '1', '2', '3'};
+    /*
+        the weighted luminance of a white pixel.
+     */
+    private static final double MAX_LUMINANCE =
+            255.0 * (LuminanceKernel.RED_WEIGHT + LuminanceKernel.GREEN_WEIGHT + LuminanceKernel.BLUE_WEIGHT);
+
+    private Image img;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        img = Image.fromFile(SyntheticImages.writePng(SIZE, SIZE, 7));
+    }
+
+    /*
+        the way BrightnessImgCharMatcher averaged sub-images before the visitor API.
+     */
+    @Benchmark
+    public double iterableAverages() {
+        double total = 0;
+        for (Image subImage : img.squareSubImagesOfSize(SUB_IMAGE_SIZE)) {
+            double average = 0;
+            double numOfPixels = 0;
+            for (Color pixel : subImage.pixels()) {
+                average += (pixel.getRed() * 0.2126 + pixel.getGreen() * 0.7152 + pixel.getBlue() * 0.0722) / 255;
+                numOfPixels++;
+            }
+            total += average / numOfPixels;
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double visitorAverages() {
+        int[] row = new int[SUB_IMAGE_SIZE];
+        double[] total = {0};
+        img.forEachSquareSubImage(SUB_IMAGE_SIZE, (x, y, width, height) -> {
+            long luminance = 0;
+            for (int dy = 0; dy < height; dy++) {
+                img.getRGBRow(x, y + dy, width, row, 0);
+                LuminanceKernel.fastest().weightedLuminance(row, 0, row, 0, width);
+                for (int dx = 0; dx < width; dx++)
+                    luminance += row[dx];
+            }
+            total[0] += luminance / (MAX_LUMINANCE * width * height);
+        });
+        return total[0];
+    }
+
+    @Benchmark
+    public char[][] chooseChars() {
+        return new BrightnessImgCharMatcher(img, "Courier New").chooseChars(SIZE / SUB_IMAGE_SIZE, CHAR_SET);
+    }
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import ascii_art.img_to_char.CharBrightnessIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up the closest char by brightness through CharBrightnessIndex with a linear
+ * scan over the char set, for growing char set sizes. Times are per lookup. That both find the same
+ * chars is tested by CharBrightnessIndexTest.
+ * Run with {@code java -jar bench/target/benchmarks.jar CharLookupBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CharLookupBenchmark {
+    private static final int QUERIES = 1 << 16;
+
+    @Param({"10", "95", "1000", "10000"})
+    public int charsetSize;
+
+    private double[] queries;
+    private Character[] charSet;
+    private double[] levels;
+    private CharBrightnessIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        queries = new double[QUERIES];
+        for (int i = 0; i < QUERIES; i++)
+            queries[i] = random.nextDouble();
+        charSet = new Character[charsetSize];
+        levels = new double[charsetSize];
+        for (int i = 0; i < charsetSize; i++) {
+            charSet[i] = (char) (' ' + i);
+            // glyph brightness comes in steps of 1/256, so equal levels are common
+            levels[i] = random.nextInt(257) / 256.0;
+        }
+        index = new CharBrightnessIndex(charSet, levels);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public long scan() {
+        long checksum = 0;
+        for (double query : queries)
+            checksum += scan(query, charSet, levels);
+        return checksum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public long index() {
+        long checksum = 0;
+        for (double query : queries)
+            checksum += index.closestChar(query);
+        return checksum;
+    }
+
+    /*
+        the lookup BrightnessImgCharMatcher did before the index.
+     */
+    private static char scan(double brightness, Character[] charSet, double[] levels) {
+        double delta = Double.MAX_VALUE;
+        int deltaCharIndex = 0;
+        for (int i = 0; i < levels.length; i++) {
+            if (Math.abs(brightness - levels[i]) < delta) {
+                delta = Math.abs(brightness - levels[i]);
+                deltaCharIndex = i;
+            }
+        }
+        return charSet[deltaCharIndex];
+    }
+}
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharBrightnessIndex;
+import ascii_art.img_to_char.GlyphCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures setting up charsets of growing size, from printable ascii to the CJK ideographs: rendering
+ * all the chars into a glyph atlas at once, against rendering them one by one, and indexing their
+ * brightness levels for matching once they are cached.
+ * Run with {@code java -jar bench/target/benchmarks.jar CharsetBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Benchmark)
+public class CharsetBenchmark {
+    private static final String FONT = "Courier New";
+    private static final int CHAR_RESOLUTION = 16;
+
+    @Param({"ascii", "blocks", "braille", "cjk"})
+    public String charset;
+
+    private Character[] charSet;
+    private GlyphCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        switch (charset) {
+            case "blocks":
+                charSet = charSet('\u2580', '\u259F');
+                break;
+            case "braille":
+                charSet = charSet('\u2800', '\u28FF');
+                break;
+            case "cjk":
+                charSet = charSet('\u4E00', '\u9FFF');
+                break;
+            default:
+                charSet = charSet(' ', '~');
+        }
+        cache = new GlyphCache(charSet.length);
+        GlyphCache.shared().getBrightness(charSet, CHAR_RESOLUTION, FONT);
+    }
+
+    @Benchmark
+    public double[] atlas() {
+        cache.clear();
+        return cache.getBrightness(charSet, CHAR_RESOLUTION, FONT);
+    }
+
+    @Benchmark
+    public double oneByOne() {
+        cache.clear();
+        double total = 0;
+        for (char c : charSet)
+            total += cache.getBrightness(c, CHAR_RESOLUTION, FONT);
+        return total;
+    }
+
+    @Benchmark
+    public CharBrightnessIndex indexCached() {
+        return BrightnessImgCharMatcher.indexChars(charSet, FONT);
+    }
+
+    private static Character[] charSet(char first, char last) {
+        Character[] charSet = new Character[last - first + 1];
+        for (int i = 0; i < charSet.length; i++)
+            charSet[i] = (char) (first + i);
+        return charSet;
+    }
+}
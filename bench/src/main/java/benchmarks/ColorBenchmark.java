@@ -0,0 +1,74 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_output.HtmlColorAsciiOutput;
+import image.ColorIntegralImage;
+import image.Image;
+import image.IntegralImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the extra cost of color rendering: indexing the color channels, next to indexing the
+ * brightness, choosing the colors of a render, and writing the colored HTML output.
+ * Run with {@code java -jar bench/target/benchmarks.jar ColorBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ColorBenchmark {
+    private static final String FONT = "Courier New";
+    private static final int CHARS_IN_ROW = 256;
+    private static final Character[] CHAR_SET = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+    @Param({"1024", "4096"})
+    public int imageSize;
+
+    private Image img;
+    private BrightnessImgCharMatcher matcher;
+    private char[][] art;
+    private int[][] artColors;
+    private File out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        img = Image.fromFile(SyntheticImages.writePng(imageSize, imageSize, imageSize));
+        matcher = new BrightnessImgCharMatcher(img, FONT);
+        art = matcher.chooseChars(CHARS_IN_ROW, CHAR_SET);
+        artColors = matcher.chooseColors(CHARS_IN_ROW);
+        out = File.createTempFile("color", ".html");
+        out.deleteOnExit();
+    }
+
+    @Benchmark
+    public IntegralImage indexBrightness() {
+        return new IntegralImage(img);
+    }
+
+    @Benchmark
+    public ColorIntegralImage indexColor() {
+        return new ColorIntegralImage(img);
+    }
+
+    @Benchmark
+    public char[][] chooseChars() {
+        return matcher.chooseChars(CHARS_IN_ROW, CHAR_SET);
+    }
+
+    @Benchmark
+    public int[][] chooseColors() {
+        return matcher.chooseColors(CHARS_IN_ROW);
+    }
+
+    @Benchmark
+    public long htmlColorOutput() {
+        new HtmlColorAsciiOutput(out.getPath(), FONT).output(art, artColors);
+        return out.length();
+    }
+}
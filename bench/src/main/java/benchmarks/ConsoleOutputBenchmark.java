@@ -0,0 +1,86 @@
+package benchmarks;
+
+import ascii_output.StreamAsciiOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing frames of chars through StreamAsciiOutput with printing them char by char, as the
+ * console output used to. Both write to a sink that discards the bytes, so only the cost of encoding
+ * and writing is measured. A frame is width * height chars, each followed by a space.
+ * Run with {@code java -jar bench/target/benchmarks.jar ConsoleOutputBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConsoleOutputBenchmark {
+    @Param({"128", "512"})
+    public int width;
+
+    private char[][] frame;
+    private PrintStream printStream;
+    private StreamAsciiOutput output;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        frame = frame(width, width / 2);
+        printStream = new PrintStream(OutputStream.nullOutputStream());
+        output = new StreamAsciiOutput(new NullChannel(), " ", Charset.defaultCharset());
+    }
+
+    @Benchmark
+    public PrintStream printPerChar() {
+        for (char[] row : frame) {
+            for (char c : row)
+                printStream.print(c + " ");
+            printStream.println();
+        }
+        return printStream;
+    }
+
+    @Benchmark
+    public StreamAsciiOutput streamOutput() {
+        output.output(frame);
+        return output;
+    }
+
+    private static char[][] frame(int width, int height) {
+        Random random = new Random(width);
+        char[][] frame = new char[height][width];
+        for (char[] row : frame)
+            for (int x = 0; x < width; x++)
+                row[x] = (char) ('0' + random.nextInt(10));
+        return frame;
+    }
+
+    /*
+        accepts and discards every byte written to it.
+     */
+    private static class NullChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer src) {
+            int written = src.remaining();
+            src.position(src.limit());
+            return written;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.Dithering;
+import image.Image;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of each kind of dithering over choosing the closest chars, on a given number of
+ * threads. The brightness grid is cached by the setup, so the times are of matching only.
+ * Run with {@code java -jar bench/target/benchmarks.jar DitheringBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class DitheringBenchmark {
+    private static final String FONT = "Courier New";
+    private static final int IMAGE_SIZE = 4096;
+    private static final Character[] CHAR_SET = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+    @Param({"NONE", "FLOYD_STEINBERG", "ATKINSON", "BAYER"})
+    public Dithering dithering;
+    @Param({"1", "4"})
+    public int threads;
+    @Param({"256", "1024", "2048"})
+    public int charsInRow;
+
+    private BrightnessImgCharMatcher matcher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Image img = Image.fromFile(SyntheticImages.writePng(IMAGE_SIZE, IMAGE_SIZE, IMAGE_SIZE));
+        matcher = new BrightnessImgCharMatcher(img, FONT, threads);
+        matcher.setDithering(dithering);
+        matcher.chooseChars(charsInRow, CHAR_SET);
+    }
+
+    @Benchmark
+    public char[][] chooseChars() {
+        return matcher.chooseChars(charsInRow, CHAR_SET);
+    }
+}
@@ -0,0 +1,91 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.Equalization;
+import image.Image;
+import image.LuminanceHistogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Measures counting the histograms of an image in bands of rows on a given number of threads, and the
+ * cost of each kind of equalization over rendering without it.
+ * Run with {@code java -jar bench/target/benchmarks.jar EqualizationBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class EqualizationBenchmark {
+    private static final String FONT = "Courier New";
+    private static final int IMAGE_SIZE = 4096;
+    private static final int TILES = 8;
+    private static final int ROWS_PER_BAND = 64;
+    private static final int CHARS_IN_ROW = 1024;
+    private static final Character[] CHAR_SET = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+    /**
+     * An image and the threads to count its histograms on.
+     */
+    @State(Scope.Benchmark)
+    public static class Histogram {
+        @Param({"1", "4"})
+        public int threads;
+
+        Image img;
+        ForkJoinPool pool;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            img = Image.fromFile(SyntheticImages.writePng(IMAGE_SIZE, IMAGE_SIZE, IMAGE_SIZE));
+            pool = new ForkJoinPool(threads);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * A matcher rendering with a kind of equalization, whose histograms are already counted.
+     */
+    @State(Scope.Benchmark)
+    public static class Render {
+        @Param({"NONE", "GLOBAL", "ADAPTIVE"})
+        public Equalization equalization;
+
+        BrightnessImgCharMatcher matcher;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            Image img = Image.fromFile(SyntheticImages.writePng(IMAGE_SIZE, IMAGE_SIZE, IMAGE_SIZE));
+            matcher = new BrightnessImgCharMatcher(img, FONT, Runtime.getRuntime().availableProcessors());
+            matcher.setEqualization(equalization);
+            matcher.chooseChars(CHARS_IN_ROW, CHAR_SET);
+        }
+    }
+
+    @Benchmark
+    public LuminanceHistogram countHistogram(Histogram state) throws ExecutionException, InterruptedException {
+        Image img = state.img;
+        return state.pool.submit(() -> {
+            LuminanceHistogram histogram = new LuminanceHistogram(img.getWidth(), img.getHeight(), TILES, TILES);
+            IntStream.range(0, (img.getHeight() + ROWS_PER_BAND - 1) / ROWS_PER_BAND).parallel().forEach(band ->
+                    histogram.addRows(img, band * ROWS_PER_BAND,
+                            Math.min(img.getHeight(), (band + 1) * ROWS_PER_BAND)));
+            return histogram;
+        }).get();
+    }
+
+    @Benchmark
+    public char[][] render(Render state) {
+        return state.matcher.chooseChars(CHARS_IN_ROW, CHAR_SET);
+    }
+}
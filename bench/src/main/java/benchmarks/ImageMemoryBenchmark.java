@@ -0,0 +1,141 @@
+package benchmarks;
+
+import image.Image;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap allocated to load an image, per megapixel of the image file, for Image.fromFile and
+ * for the former loader, which padded the image to powers of two and kept a Color object per pixel.
+ * The allocation is read from the JVM's count of the bytes the loading thread allocated, so it doesn't
+ * depend on when garbage is collected. It includes decoding the file, which both loaders do the same way,
+ * and is measured for decoding alone too. Run without the image cache directory property, so that
+ * Image.fromFile decodes to the heap, e.g.
+ * {@code java -cp bench/target/benchmarks.jar benchmarks.ImageMemoryBenchmark 1000 2049 4000}
+ */
+public class ImageMemoryBenchmark {
+    private static final int[] DEFAULT_SIZES = {512, 1025, 2048, 4000};
+    /*
+        every load is repeated, and the least allocation kept, to leave out one-off allocations such as
+        loading classes.
+     */
+    private static final int REPEATS = 3;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    /*
+        the last loaded image, so that the loads can't be optimized away.
+     */
+    private static Object loaded;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = DEFAULT_SIZES;
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                sizes[i] = Integer.parseInt(args[i]);
+        }
+        if (!THREADS.isThreadAllocatedMemorySupported())
+            throw new IllegalStateException("this JVM doesn't count allocated bytes");
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+        System.out.printf("%-12s %-12s %14s %16s %14s%n",
+                "source", "padded", "decode MB/MP", "Color[][] MB/MP", "int[] MB/MP");
+        for (int size : sizes) {
+            String filename = SyntheticImages.writePng(size, size, size);
+            double megapixels = (double) size * size / 1e6;
+
+            long decodeBytes = allocatedBytes(() -> ImageIO.read(new File(filename)));
+            long legacyBytes = allocatedBytes(() -> new LegacyFileImage(filename));
+            long packedBytes = allocatedBytes(() -> Image.fromFile(filename));
+            if (((Image) loaded).getWidth() != size)
+                throw new AssertionError("Image.fromFile loaded the wrong image");
+            Image padded = new LegacyFileImage(filename);
+
+            System.out.printf("%-12s %-12s %14.2f %16.2f %14.2f%n",
+                    size + "x" + size, padded.getWidth() + "x" + padded.getHeight(),
+                    decodeBytes / 1e6 / megapixels, legacyBytes / 1e6 / megapixels,
+                    packedBytes / 1e6 / megapixels);
+        }
+    }
+
+    /*
+        the least number of bytes the current thread allocated while loading, over REPEATS loads.
+     */
+    private static long allocatedBytes(Loader loader) throws IOException {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < REPEATS; i++) {
+            loaded = null;
+            long before = THREADS.getCurrentThreadAllocatedBytes();
+            loaded = loader.load();
+            least = Math.min(least, THREADS.getCurrentThreadAllocatedBytes() - before);
+            if (loaded == null)
+                throw new IOException("failed to load the image");
+        }
+        return least;
+    }
+
+    private interface Loader {
+        Object load() throws IOException;
+    }
+
+    /*
+        FileImage as it was before the pixels were packed: the image is centered in the next powers of
+        two of its width and height, with a white margin, and every pixel of the image is a Color.
+     */
+    private static class LegacyFileImage implements Image {
+        private static final Color DEFAULT_COLOR = Color.WHITE;
+
+        private final Color[][] pixelArray;
+
+        LegacyFileImage(String filename) throws IOException {
+            BufferedImage im = ImageIO.read(new File(filename));
+            int origWidth = im.getWidth(), origHeight = im.getHeight();
+
+            int newWidth = getPowerOfTwoGreaterThan(origWidth);
+            int newHeight = getPowerOfTwoGreaterThan(origHeight);
+
+            pixelArray = new Color[newHeight][newWidth];
+            float xMargin = (newWidth-origWidth)/2.0f;
+            float yMargin = (newHeight-origHeight)/2.0f;
+
+            for(int y = 0 ; y < pixelArray.length ; y++) {
+                for(int x = 0 ; x < pixelArray[y].length ; x++) {
+                    //if this pixel is not in the margins, take value from image
+                    if(x >= (int)Math.floor(xMargin) && x < pixelArray[y].length-Math.ceil(xMargin) &&
+                       y >= (int)Math.floor(yMargin) && y < pixelArray.length-Math.ceil(yMargin)) {
+                    pixelArray[y][x] = new Color(im.getRGB(
+                            x-(int)Math.floor(xMargin),
+                            y-(int)Math.floor(yMargin)));
+                    }
+                    else { //otherwise, color with default background color
+                        pixelArray[y][x] = DEFAULT_COLOR;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int getWidth() {
+            return pixelArray[0].length;
+        }
+
+        @Override
+        public int getHeight() {
+            return pixelArray.length;
+        }
+
+        @Override
+        public Color getPixel(int x, int y) {
+            return pixelArray[y][x];
+        }
+
+        private static int getPowerOfTwoGreaterThan(int num) {
+            return (int)Math.pow(2, Math.ceil(Math.log(num)/Math.log(2)));
+        }
+    }
+}
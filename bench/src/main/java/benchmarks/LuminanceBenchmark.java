@@ -0,0 +1,58 @@
+package benchmarks;
+
+import image.Image;
+import image.IntegralImage;
+import image.LuminanceKernel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the scalar and the fastest luminance kernels, on their own over whole images, and as part of
+ * building the summed-area table of an image.
+ * The forked JVMs run with the Vector API, so the fastest kernel is the vector one where the build
+ * included it; run with {@code -jvmArgsAppend --limit-modules=java.desktop,jdk.unsupported} to see the
+ * fallback to the scalar kernel.
+ * Run with {@code java -jar bench/target/benchmarks.jar LuminanceBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class LuminanceBenchmark {
+    @Param({"1024", "4096"})
+    public int imageSize;
+
+    private Image img;
+    private int[] argb;
+    private int[] luminance;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        img = Image.fromFile(SyntheticImages.writePng(imageSize, imageSize, imageSize));
+        argb = new int[imageSize * imageSize];
+        for (int y = 0; y < imageSize; y++)
+            img.getRGBRow(0, y, imageSize, argb, y * imageSize);
+        luminance = new int[argb.length];
+    }
+
+    @Benchmark
+    public int[] scalarKernel() {
+        LuminanceKernel.scalar().weightedLuminance(argb, 0, luminance, 0, argb.length);
+        return luminance;
+    }
+
+    @Benchmark
+    public int[] fastestKernel() {
+        LuminanceKernel.fastest().weightedLuminance(argb, 0, luminance, 0, argb.length);
+        return luminance;
+    }
+
+    @Benchmark
+    public IntegralImage integralImage() {
+        return new IntegralImage(img);
+    }
+}
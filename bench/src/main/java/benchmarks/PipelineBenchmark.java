@@ -0,0 +1,123 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.GlyphCache;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each stage of rendering an image, on synthetic images:
+ * loading the file, converting it at a given resolution, rasterizing chars and writing the output.
+ * Parameterized over image size, char set size and chars in a row.
+ * Run with {@code java -jar bench/target/benchmarks.jar PipelineBenchmark}, or a single stage with
+ * e.g. {@code PipelineBenchmark.convert}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+public class PipelineBenchmark {
+    private static final String FONT = "Courier New";
+
+    /**
+     * An image along with the chars to render it in.
+     */
+    @State(Scope.Benchmark)
+    public static class Render {
+        @Param({"256", "1024", "4096"})
+        public int imageSize;
+        @Param({"10", "95"})
+        public int charsetSize;
+        @Param({"64", "256"})
+        public int charsInRow;
+
+        String filename;
+        Image img;
+        Character[] charSet;
+        BrightnessImgCharMatcher matcher;
+        char[][] chars;
+        HtmlAsciiOutput output;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            filename = SyntheticImages.writePng(imageSize, imageSize * 3 / 4, imageSize);
+            img = Image.fromFile(filename);
+            charSet = charSet(charsetSize);
+            matcher = new BrightnessImgCharMatcher(img, FONT);
+            chars = matcher.chooseChars(charsInRow, charSet);
+            File out = File.createTempFile("pipeline", ".html");
+            out.deleteOnExit();
+            output = new HtmlAsciiOutput(out.getPath(), FONT);
+        }
+    }
+
+    /**
+     * An empty cache of glyphs to rasterize a char set into.
+     */
+    @State(Scope.Benchmark)
+    public static class Glyphs {
+        @Param({"10", "95"})
+        public int charsetSize;
+
+        Character[] charSet;
+        GlyphCache cache;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            charSet = charSet(charsetSize);
+            cache = new GlyphCache(charsetSize);
+        }
+    }
+
+    @Benchmark
+    public Image load(Render render) throws IOException {
+        return Image.fromFile(render.filename);
+    }
+
+    /*
+        a first render of the image, which indexes its brightness.
+     */
+    @Benchmark
+    public char[][] convert(Render render) {
+        return new BrightnessImgCharMatcher(render.img, FONT).chooseChars(render.charsInRow, render.charSet);
+    }
+
+    /*
+        a render of an image which was already rendered at the same resolution.
+     */
+    @Benchmark
+    public char[][] reconvert(Render render) {
+        return render.matcher.chooseChars(render.charsInRow, render.charSet);
+    }
+
+    @Benchmark
+    public HtmlAsciiOutput outputHtml(Render render) {
+        render.output.output(render.chars);
+        return render.output;
+    }
+
+    @Benchmark
+    public double rasterizeGlyphs(Glyphs glyphs) {
+        glyphs.cache.clear();
+        double total = 0;
+        for (char c : glyphs.charSet)
+            total += glyphs.cache.getBrightness(c, 16, FONT);
+        return total;
+    }
+
+    /*
+        the first charsetSize printable ascii chars, starting from '0' like the shell's default set.
+     */
+    private static Character[] charSet(int charsetSize) {
+        Character[] charSet = new Character[charsetSize];
+        for (int i = 0; i < charsetSize; i++)
+            charSet[i] = (char) (' ' + ('0' - ' ' + i) % 95);
+        return charSet;
+    }
+}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates deterministic test images so the benchmarks run offline.
+ */
+public class SyntheticImages {
+    private SyntheticImages() {
+    }
+
+    /**
+     * Creates an image with a diagonal gradient, a few bright discs and some noise,
+     * so that the tiles have a spread of brightness levels.
+     */
+    public static BufferedImage create(int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        int discs = 8;
+        int[] cx = new int[discs], cy = new int[discs], r = new int[discs];
+        for (int i = 0; i < discs; i++) {
+            cx[i] = random.nextInt(width);
+            cy[i] = random.nextInt(height);
+            r[i] = 1 + random.nextInt(Math.max(1, Math.min(width, height) / 4));
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int level = (int) (255L * (x + y) / (width + height));
+                for (int i = 0; i < discs; i++) {
+                    long dx = x - cx[i], dy = y - cy[i];
+                    if (dx * dx + dy * dy < (long) r[i] * r[i])
+                        level = 255 - level;
+                }
+                level = Math.max(0, Math.min(255, level + random.nextInt(33) - 16));
+                row[x] = (level << 16) | (((level * 3) & 0xFF) << 8) | (255 - level);
+            }
+            img.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return img;
+    }
+
+    /**
+     * Writes a synthetic image to a temporary PNG file that is deleted on exit.
+     * @return the path of the written file
+     */
+    public static String writePng(int width, int height, long seed) throws IOException {
+        File file = File.createTempFile(String.format("synthetic-%dx%d-", width, height), ".png");
+        file.deleteOnExit();
+        ImageIO.write(create(width, height, seed), "png", file);
+        return file.getPath();
+    }
+}
@@ -0,0 +1,33 @@
+package image;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A package-private class of the package image.
+ * The luminance kernel on the incubating Vector API: converts as many pixels at once as the widest
+ * vector registers of the CPU hold. Requires {@code --add-modules jdk.incubator.vector} to compile and
+ * to run, so it is kept out of src, in a source root that the build only compiles on JDKs that have the
+ * module; it is only ever loaded through {@link LuminanceKernel#fastest()}.
+ */
+class VectorLuminanceKernel implements LuminanceKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    @Override
+    public void weightedLuminance(int[] argb, int offset, int[] dest, int destOffset, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            IntVector pixels = IntVector.fromArray(SPECIES, argb, offset + i);
+            IntVector red = pixels.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+            IntVector green = pixels.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+            IntVector blue = pixels.and(0xFF);
+            red.mul(RED_WEIGHT)
+                    .add(green.mul(GREEN_WEIGHT))
+                    .add(blue.mul(BLUE_WEIGHT))
+                    .intoArray(dest, destOffset + i);
+        }
+        for (; i < length; i++)
+            dest[destOffset + i] = LuminanceKernel.weightedLuminance(argb[offset + i]);
+    }
+}
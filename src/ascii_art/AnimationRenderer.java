@@ -0,0 +1,225 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharBrightnessIndex;
+import ascii_output.AsciiOutput;
+import ascii_output.DeltaConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.FrameSequence;
+import image.Image;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Renders the frames of an animation as a pipeline of three stages, each on its own thread:
+ * decoding frames, converting them to chars and outputting them. The stages are connected by
+ * small bounded queues, so a slow stage holds back the ones before it rather than piling up frames.
+ * The chars are indexed once and shared by all the frames.
+ */
+public class AnimationRenderer {
+    static final String ANIMATE_FLAG = "--animate";
+    static final String USAGE = "USAGE: java asciiArt " + ANIMATE_FLAG +
+            " <gif file or directory of frames> [--chars 0-9,a-z,space|all] [--res charsInRow]" +
+            " [--delta] [--fps maxFramesPerSecond] [--html directory]";
+    private static final String DEFAULT_CHARS = "0-9";
+    private static final int DEFAULT_CHARS_IN_ROW = 80;
+    private static final int QUEUE_CAPACITY = 4;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final String HTML_FRAME_NAME = "frame%05d.html";
+    /*
+        marks the end of the frames in a queue.
+     */
+    private static final Object END = new Object();
+
+    private final String path;
+    private final Character[] charSet;
+    private final int charsInRow;
+    private final AsciiOutput output;
+    private final double maxFps;
+    private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+    /**
+     * Constructor
+     *
+     * @param path       a GIF file, or a directory holding one image file per frame.
+     * @param charSet    a set of char to choose from.
+     * @param charsInRow how many char will be printed in a row of each frame.
+     * @param output     receives the frames of chars, in order.
+     * @param maxFps     the maximal number of frames to output per second, 0 for no limit.
+     */
+    public AnimationRenderer(String path, Character[] charSet, int charsInRow, AsciiOutput output, double maxFps) {
+        this.path = path;
+        this.charSet = charSet;
+        this.charsInRow = charsInRow;
+        this.output = output;
+        this.maxFps = maxFps;
+    }
+
+    /**
+     * Creates a renderer from command line arguments, following {@link #USAGE}.
+     *
+     * @param args the arguments after the animate flag.
+     * @return the renderer, or null if the arguments are invalid.
+     */
+    static AnimationRenderer fromArgs(String[] args) throws IOException {
+        String path = null;
+        String chars = DEFAULT_CHARS;
+        int charsInRow = DEFAULT_CHARS_IN_ROW;
+        boolean delta = false;
+        double maxFps = 0;
+        Path htmlDirectory = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--chars":
+                        chars = args[++i];
+                        break;
+                    case "--res":
+                        charsInRow = Integer.parseInt(args[++i]);
+                        break;
+                    case "--delta":
+                        delta = true;
+                        break;
+                    case "--fps":
+                        maxFps = Double.parseDouble(args[++i]);
+                        break;
+                    case "--html":
+                        htmlDirectory = Path.of(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--") || path != null)
+                            return null;
+                        path = args[i];
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            return null;
+        }
+        Character[] charSet = BatchRenderer.parseCharSet(chars);
+        if (path == null || charSet == null || charsInRow <= 0 || maxFps < 0)
+            return null;
+        AsciiOutput output;
+        if (htmlDirectory == null) {
+            output = new DeltaConsoleAsciiOutput(System.out, delta);
+        } else {
+            Files.createDirectories(htmlDirectory);
+            output = htmlFrames(htmlDirectory);
+        }
+        return new AnimationRenderer(path, charSet, charsInRow, output, maxFps);
+    }
+
+    /**
+     * Renders all the frames, reporting the frame rate on the standard error as it goes.
+     *
+     * @return how many frames were rendered.
+     * @throws Exception the first failure of any of the stages.
+     */
+    public int run() throws Exception {
+        CharBrightnessIndex charIndex = BrightnessImgCharMatcher.indexChars(charSet, Shell.FONT_NAME);
+        BlockingQueue<Object> frames = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Object> asciiFrames = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        Thread decoder = new Thread(() -> decode(frames), "animation-decoder");
+        Thread converter = new Thread(() -> convert(frames, asciiFrames, charIndex), "animation-converter");
+        decoder.setDaemon(true);
+        converter.setDaemon(true);
+        decoder.start();
+        converter.start();
+
+        FrameRateCounter counter = new FrameRateCounter();
+        long frameNanos = maxFps > 0 ? (long) (NANOS_PER_SECOND / maxFps) : 0;
+        long nextFrame = System.nanoTime();
+        int numOfFrames = 0;
+        for (Object frame = asciiFrames.take(); frame != END; frame = asciiFrames.take()) {
+            if (frameNanos > 0) {
+                long wait = nextFrame - System.nanoTime();
+                if (wait > 0)
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                nextFrame = Math.max(nextFrame + frameNanos, System.nanoTime());
+            }
+            output.output((char[][]) frame);
+            numOfFrames++;
+            counter.frameDone();
+        }
+        System.err.printf("%n%d frames, %.1f fps on average%n", numOfFrames, counter.averageFps());
+        if (failure.get() != null)
+            throw failure.get();
+        return numOfFrames;
+    }
+
+    private void decode(BlockingQueue<Object> frames) {
+        try (FrameSequence sequence = FrameSequence.open(path)) {
+            for (Image frame = sequence.nextFrame(); frame != null; frame = sequence.nextFrame())
+                frames.put(frame);
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            putEnd(frames);
+        }
+    }
+
+    private void convert(BlockingQueue<Object> frames, BlockingQueue<Object> asciiFrames,
+                         CharBrightnessIndex charIndex) {
+        try {
+            for (Object frame = frames.take(); frame != END; frame = frames.take()) {
+                // each frame is rendered once, so caching its grid would only evict the grids of others
+                BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher((Image) frame, Shell.FONT_NAME);
+                matcher.setGridCache(null);
+                asciiFrames.put(matcher.chooseChars(charsInRow, charIndex));
+            }
+        } catch (Exception e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            putEnd(asciiFrames);
+        }
+    }
+
+    private static void putEnd(BlockingQueue<Object> queue) {
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+        writing every frame to its own numbered html file.
+     */
+    private static AsciiOutput htmlFrames(Path directory) {
+        int[] frameNumber = {0};
+        return chars -> new HtmlAsciiOutput(
+                directory.resolve(String.format(HTML_FRAME_NAME, frameNumber[0]++)).toString(),
+                Shell.FONT_NAME).output(chars);
+    }
+
+    /*
+        counts output frames, and reports the frame rate of the last second about once a second.
+     */
+    private static class FrameRateCounter {
+        private final long start = System.nanoTime();
+        private long windowStart = start;
+        private int windowFrames = 0;
+        private int totalFrames = 0;
+
+        void frameDone() {
+            totalFrames++;
+            windowFrames++;
+            long now = System.nanoTime();
+            if (now - windowStart >= NANOS_PER_SECOND) {
+                System.err.printf("\r%.1f fps", windowFrames * (double) NANOS_PER_SECOND / (now - windowStart));
+                windowStart = now;
+                windowFrames = 0;
+            }
+        }
+
+        double averageFps() {
+            long elapsed = System.nanoTime() - start;
+            return elapsed == 0 ? 0 : totalFrames * (double) NANOS_PER_SECOND / elapsed;
+        }
+    }
+}
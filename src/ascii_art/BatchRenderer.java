@@ -0,0 +1,214 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharBrightnessIndex;
+import ascii_art.img_to_char.StripImgCharMatcher;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import image.ImageStrips;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Renders many images without user interaction, on a bounded pool of worker threads.
+ * All the workers share the process-wide cache of rendered chars, so every char is
+ * rasterized once for the whole batch.
+ */
+public class BatchRenderer {
+    static final String BATCH_FLAG = "--batch";
+    static final String USAGE = "USAGE: java asciiArt " + BATCH_FLAG +
+            " [--chars 0-9,a-z,space|all|blocks|braille|cjk|U+XXXX-U+XXXX] [--res charsInRow]" +
+            " [--format html|txt]" +
+            " [--threads n] [--out directory] <image or directory>...";
+    private static final String DEFAULT_CHARS = "0-9";
+    private static final int DEFAULT_CHARS_IN_ROW = 128;
+    private static final String HTML_FORMAT = "html";
+    private static final String TEXT_FORMAT = "txt";
+    /*
+        images with more pixels than this are decoded in strips rather than as a whole.
+     */
+    private static final long MAX_IN_MEMORY_PIXELS = 1L << 26;
+    private static final Set<String> IMAGE_EXTENSIONS = Set.of("png", "jpg", "jpeg", "bmp", "gif");
+
+    private final List<Path> images;
+    private final CharBrightnessIndex charIndex;
+    private final int charsInRow;
+    private final String format;
+    private final int threads;
+    private final Path outputDirectory;
+
+    private BatchRenderer(List<Path> images, Character[] charSet, int charsInRow,
+                          String format, int threads, Path outputDirectory) {
+        this.images = images;
+        // the brightness of the chars is the same for every image, so it is indexed once for the batch
+        charIndex = BrightnessImgCharMatcher.indexChars(charSet, Shell.FONT_NAME);
+        this.charsInRow = charsInRow;
+        this.format = format;
+        this.threads = threads;
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Creates a batch from command line arguments, following {@link #USAGE}.
+     *
+     * @param args the arguments after the batch flag.
+     * @return the batch, or null if the arguments are invalid.
+     */
+    static BatchRenderer fromArgs(String[] args) throws IOException {
+        String chars = DEFAULT_CHARS;
+        int charsInRow = DEFAULT_CHARS_IN_ROW;
+        String format = HTML_FORMAT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path outputDirectory = Path.of(".");
+        List<Path> images = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--chars":
+                        chars = args[++i];
+                        break;
+                    case "--res":
+                        charsInRow = Integer.parseInt(args[++i]);
+                        break;
+                    case "--format":
+                        format = args[++i];
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "--out":
+                        outputDirectory = Path.of(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--"))
+                            return null;
+                        addImages(Path.of(args[i]), images);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            return null;
+        }
+        Character[] charSet = parseCharSet(chars);
+        if (charSet == null || images.isEmpty() || charsInRow <= 0 || threads <= 0 ||
+            !(format.equals(HTML_FORMAT) || format.equals(TEXT_FORMAT)))
+            return null;
+        Files.createDirectories(outputDirectory);
+        return new BatchRenderer(images, charSet, charsInRow, format, threads, outputDirectory);
+    }
+
+    /**
+     * Renders all the images, printing the time each took and the total throughput.
+     *
+     * @return true if all the images were rendered.
+     */
+    boolean run() throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        List<Future<Long>> results = new ArrayList<>();
+        for (Path image : images)
+            results.add(workers.submit(() -> render(image)));
+        workers.shutdown();
+
+        int rendered = 0;
+        for (int i = 0; i < images.size(); i++) {
+            try {
+                long nanos = results.get(i).get();
+                rendered++;
+                System.out.printf("%s: %.1f ms%n", images.get(i), nanos / 1e6);
+            } catch (ExecutionException e) {
+                Logger.getGlobal().severe("Failed to render " + images.get(i) + ": " + e.getCause());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Rendered %d/%d images in %.2f s (%.2f images/sec, %d threads)%n",
+                rendered, images.size(), seconds, rendered / seconds, threads);
+        return rendered == images.size();
+    }
+
+    /*
+        rendering a single image to its output file, returning how long it took in nanoseconds.
+     */
+    private long render(Path image) throws IOException {
+        long start = System.nanoTime();
+        Path output = outputDirectory.resolve(baseName(image) + "." + format);
+        char[][] chars;
+        try (ImageStrips strips = ImageStrips.open(image.toString())) {
+            if ((long) strips.getWidth() * strips.getHeight() > MAX_IN_MEMORY_PIXELS) {
+                StripImgCharMatcher matcher = new StripImgCharMatcher(strips, Shell.FONT_NAME);
+                if (format.equals(HTML_FORMAT)) {
+                    // writing each row as soon as its strip is converted
+                    HtmlAsciiOutput html = new HtmlAsciiOutput(output.toString(), Shell.FONT_NAME);
+                    try (HtmlAsciiOutput.RowWriter writer = html.open(matcher.getNumOfCols(charsInRow))) {
+                        matcher.chooseChars(charsInRow, charIndex, writer);
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                    return System.nanoTime() - start;
+                }
+                chars = matcher.chooseChars(charsInRow, charIndex);
+            } else {
+                Image img = strips.readAll();
+                // each file is rendered once, so caching its grid would only evict the grids of others
+                BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(img, Shell.FONT_NAME);
+                matcher.setGridCache(null);
+                chars = matcher.chooseChars(charsInRow, charIndex);
+            }
+        }
+        if (format.equals(HTML_FORMAT))
+            new HtmlAsciiOutput(output.toString(), Shell.FONT_NAME).output(chars);
+        else
+            Files.write(output, Arrays.stream(chars).map(String::new).collect(Collectors.toList()));
+        return System.nanoTime() - start;
+    }
+
+    private static void addImages(Path path, List<Path> images) throws IOException {
+        if (!Files.isDirectory(path)) {
+            images.add(path);
+            return;
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            files.filter(Files::isRegularFile)
+                 .filter(file -> IMAGE_EXTENSIONS.contains(extension(file)))
+                 .sorted()
+                 .forEach(images::add);
+        }
+    }
+
+    /*
+        parsing comma separated char ranges, each in the form the shell's add command accepts.
+     */
+    static Character[] parseCharSet(String chars) {
+        Set<Character> charSet = new TreeSet<>();
+        for (String param : chars.split(",")) {
+            char[] range = Shell.parseCharRange(param);
+            if (range == null)
+                return null;
+            for (int c = Math.min(range[0], range[1]); c <= Math.max(range[0], range[1]); c++)
+                charSet.add((char) c);
+        }
+        return charSet.toArray(Character[]::new);
+    }
+
+    private static String baseName(Path image) {
+        String name = image.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private static String extension(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+}
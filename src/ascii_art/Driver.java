@@ -1,12 +1,35 @@
 package ascii_art;
+import ascii_art.img_to_char.GlyphCache;
 import image.Image;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 /**
  * Main manger for the program
  */
 public class Driver {
+    /*
+        when set, rendered chars are loaded from and saved to this file between runs.
+     */
+    private static final String GLYPH_CACHE_PROPERTY = "ascii_art.glyphCache";
+
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals(BatchRenderer.BATCH_FLAG)) {
+            runBatch(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals(RenderServer.SERVE_FLAG)) {
+            runServer(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals(AnimationRenderer.ANIMATE_FLAG)) {
+            runAnimation(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         if (args.length != 1) {
             System.err.println("USAGE: java asciiArt ");
             return;
@@ -16,6 +39,68 @@ public class Driver {
             Logger.getGlobal().severe("Failed to open image file " + args[0]);
             return;
         }
+        String glyphCacheFile = System.getProperty(GLYPH_CACHE_PROPERTY);
+        if (glyphCacheFile != null)
+            loadGlyphCache(Path.of(glyphCacheFile));
         new Shell(img).run();
+        if (glyphCacheFile != null)
+            saveGlyphCache(Path.of(glyphCacheFile));
+    }
+
+    private static void runBatch(String[] args) throws Exception {
+        BatchRenderer batch = BatchRenderer.fromArgs(args);
+        if (batch == null) {
+            System.err.println(BatchRenderer.USAGE);
+            return;
+        }
+        String glyphCacheFile = System.getProperty(GLYPH_CACHE_PROPERTY);
+        if (glyphCacheFile != null)
+            loadGlyphCache(Path.of(glyphCacheFile));
+        boolean succeeded = batch.run();
+        if (glyphCacheFile != null)
+            saveGlyphCache(Path.of(glyphCacheFile));
+        if (!succeeded)
+            System.exit(1);
+    }
+
+    private static void runAnimation(String[] args) throws Exception {
+        AnimationRenderer animation = AnimationRenderer.fromArgs(args);
+        if (animation == null) {
+            System.err.println(AnimationRenderer.USAGE);
+            return;
+        }
+        animation.run();
+    }
+
+    private static void runServer(String[] args) throws Exception {
+        RenderServer server = RenderServer.fromArgs(args);
+        if (server == null) {
+            System.err.println(RenderServer.USAGE);
+            return;
+        }
+        String glyphCacheFile = System.getProperty(GLYPH_CACHE_PROPERTY);
+        if (glyphCacheFile != null) {
+            loadGlyphCache(Path.of(glyphCacheFile));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> saveGlyphCache(Path.of(glyphCacheFile))));
+        }
+        server.start();
+    }
+
+    private static void loadGlyphCache(Path file) {
+        if (!Files.exists(file))
+            return;
+        try {
+            GlyphCache.shared().load(file);
+        } catch (IOException e) {
+            Logger.getGlobal().warning("Failed to load glyph cache " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void saveGlyphCache(Path file) {
+        try {
+            GlyphCache.shared().save(file);
+        } catch (IOException e) {
+            Logger.getGlobal().warning("Failed to save glyph cache " + file + ": " + e.getMessage());
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,388 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessGridCache;
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.GlyphCache;
+import ascii_output.AnsiColorAsciiOutput;
+import ascii_output.HtmlColorAsciiOutput;
+import ascii_output.StreamAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.Image;
+import metrics.Metrics;
+
+import java.awt.Dimension;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Renders uploaded images over HTTP, so that many renders share a single JVM, and with it the glyphs
+ * which were already rendered and the images which were rendered recently.
+ * <ul>
+ * <li>{@code POST /render?chars=0-9,a-z&res=128&format=txt|html|ansi&color=true} with the image file as
+ * the body, returns the ascii art.</li>
+ * <li>{@code GET /metrics} returns the request latency percentiles, the cache sizes and the
+ * {@link Metrics} of the stages of rendering as JSON.</li>
+ * </ul>
+ */
+public class RenderServer {
+    static final String SERVE_FLAG = "--serve";
+    static final String USAGE = "USAGE: java asciiArt " + SERVE_FLAG + " [port]";
+    private static final int DEFAULT_PORT = 8080;
+    private static final String DEFAULT_CHARS = "0-9";
+    private static final int DEFAULT_CHARS_IN_ROW = 128;
+    private static final int MAX_UPLOAD_BYTES = 64 << 20;
+    /*
+        the decoded images are kept while the total of their pixels is within this budget. an image takes
+        up to about 27 bytes a pixel: 4 for its pixels, 8 for its brightness table, about 3 for its
+        brightness pyramid and 12 for its color tables once it is rendered in color, so the cache takes up
+        to about 900MB, besides the grids of the shared grid cache.
+     */
+    private static final long IMAGE_CACHE_PIXELS = 1L << 25;
+    /*
+        larger images are turned away, from the dimensions in their header, before they are decoded.
+     */
+    private static final long MAX_IMAGE_PIXELS = IMAGE_CACHE_PIXELS;
+    private static final int LATENCY_SAMPLES = 4096;
+
+    private final HttpServer server;
+    private final ExecutorService executor = newRequestExecutor();
+    private final ImageCache images = new ImageCache(IMAGE_CACHE_PIXELS);
+    private final Latencies latencies = new Latencies(LATENCY_SAMPLES);
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param port the port to listen on, 0 for any free port.
+     */
+    public RenderServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/render", this::handleRender);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Creates a server from command line arguments, following {@link #USAGE}.
+     *
+     * @param args the arguments after the serve flag.
+     * @return the server, or null if the arguments are invalid.
+     */
+    static RenderServer fromArgs(String[] args) throws IOException {
+        if (args.length > 1)
+            return null;
+        try {
+            return new RenderServer(args.length == 0 ? DEFAULT_PORT : Integer.parseInt(args[0]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts handling requests, in the background.
+     */
+    public void start() {
+        server.start();
+        System.out.println("Listening on port " + getPort());
+    }
+
+    /**
+     * Stops handling requests, waiting up to the given time for the current ones to complete.
+     *
+     * @param delaySeconds the longest time to wait.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /*
+        a thread per request: a virtual thread where the runtime has them, otherwise a pooled thread.
+     */
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void handleRender(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        try {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                fail(exchange, 405, "Use POST with the image file as the body");
+                return;
+            }
+            Map<String, String> params = queryParams(exchange.getRequestURI().getRawQuery());
+            Character[] charSet = BatchRenderer.parseCharSet(params.getOrDefault("chars", DEFAULT_CHARS));
+            int charsInRow;
+            try {
+                charsInRow = Integer.parseInt(params.getOrDefault("res", String.valueOf(DEFAULT_CHARS_IN_ROW)));
+            } catch (NumberFormatException e) {
+                charsInRow = 0;
+            }
+            String format = params.getOrDefault("format", "txt");
+            boolean color = Boolean.parseBoolean(params.get("color")) || format.equals("ansi");
+            if (charSet == null || charsInRow <= 0 ||
+                !(format.equals("txt") || format.equals("html") || format.equals("ansi"))) {
+                fail(exchange, 400, "Bad parameters, expected chars=0-9,a-z&res=128&format=txt|html|ansi");
+                return;
+            }
+            byte[] upload = readUpload(exchange.getRequestBody());
+            if (upload == null) {
+                fail(exchange, 413, "The image is larger than " + MAX_UPLOAD_BYTES + " bytes");
+                return;
+            }
+            Dimension dimensions = Image.dimensionsOf(upload);
+            if (dimensions == null) {
+                fail(exchange, 400, "The body is not an image file");
+                return;
+            }
+            if ((long) dimensions.width * dimensions.height > MAX_IMAGE_PIXELS) {
+                fail(exchange, 413, "The image is larger than " + MAX_IMAGE_PIXELS + " pixels");
+                return;
+            }
+            BrightnessImgCharMatcher matcher = images.get(upload);
+            if (matcher == null) {
+                fail(exchange, 400, "The body is not an image file");
+                return;
+            }
+            char[][] chars = matcher.chooseChars(charsInRow, charSet);
+            int[][] colors = color ? matcher.chooseColors(charsInRow) : null;
+            respond(exchange, 200, contentType(format), render(format, chars, colors));
+            latencies.add(System.nanoTime() - start);
+        } catch (Exception e) {
+            failedRequests.incrementAndGet();
+            Logger.getGlobal().severe("Failed to render a request: " + e);
+            failUnanswered(exchange);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /*
+        answering a request which failed before its response was started with an internal error, so that
+        no request is left without a status.
+     */
+    private static void failUnanswered(HttpExchange exchange) {
+        if (exchange.getResponseCode() != -1)
+            return;
+        try {
+            respond(exchange, 500, "text/plain; charset=UTF-8",
+                    "Failed to render the image\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) { // the client is gone
+            Logger.getGlobal().warning("Failed to answer a failed request: " + e);
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long[] sorted = latencies.sorted();
+            String json = String.format(Locale.ROOT,
+                    "{\"requests\":%d,\"failed\":%d," +
+                    "\"latency_ms\":{\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"max\":%.3f}," +
+                    "\"image_cache\":{\"entries\":%d,\"pixels\":%d,\"hits\":%d,\"misses\":%d}," +
+                    "\"glyph_cache\":{\"entries\":%d}," +
+                    "\"grid_cache\":{\"entries\":%d,\"bytes\":%d},\"stages\":%s}%n",
+                    requests.get(), failedRequests.get(),
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), percentile(sorted, 100),
+                    images.size(), images.pixels(), images.hits.get(), images.misses.get(),
+                    GlyphCache.shared().size(),
+                    BrightnessGridCache.shared().size(), BrightnessGridCache.shared().sizeInBytes(),
+                    Metrics.toJson());
+            respond(exchange, 200, "application/json", json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] render(String format, char[][] chars, int[][] colors) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        switch (format) {
+            case "html":
+                HtmlColorAsciiOutput.write(out, Shell.FONT_NAME, chars, colors);
+                break;
+            case "ansi":
+                new AnsiColorAsciiOutput(out).output(chars, colors);
+                break;
+            default:
+                new StreamAsciiOutput(out, "").output(chars);
+        }
+        return out.toByteArray();
+    }
+
+    private static String contentType(String format) {
+        String charset = "; charset=" + Charset.defaultCharset().name();
+        return (format.equals("html") ? "text/html" : "text/plain") + charset;
+    }
+
+    private void fail(HttpExchange exchange, int status, String message) throws IOException {
+        failedRequests.incrementAndGet();
+        respond(exchange, status, "text/plain; charset=UTF-8",
+                (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /*
+        reading the request body, or returning null if it is larger than the upload limit.
+     */
+    private static byte[] readUpload(InputStream body) throws IOException {
+        byte[] upload = body.readNBytes(MAX_UPLOAD_BYTES + 1);
+        return upload.length > MAX_UPLOAD_BYTES ? null : upload;
+    }
+
+    private static Map<String, String> queryParams(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null)
+            return params;
+        for (String param : query.split("&")) {
+            int equals = param.indexOf('=');
+            if (equals < 0)
+                continue;
+            params.put(URLDecoder.decode(param.substring(0, equals), StandardCharsets.UTF_8),
+                    URLDecoder.decode(param.substring(equals + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /*
+        the value below which the given percent of the sorted samples are, in milliseconds.
+     */
+    private static double percentile(long[] sorted, int percent) {
+        if (sorted.length == 0)
+            return 0;
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+
+    /*
+        the most recently used decoded images, each with the matcher that renders it, so that its
+        brightness tables are shared by all the renders of the image. keyed by a digest of the image
+        file, and bounded by the total number of pixels of the images.
+     */
+    private static class ImageCache {
+        private final long maxPixels;
+        private final LinkedHashMap<String, CachedImage> cached = new LinkedHashMap<>(16, 0.75f, true);
+        private long pixels = 0;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        ImageCache(long maxPixels) {
+            this.maxPixels = maxPixels;
+        }
+
+        /*
+            returning the matcher of an image file, decoding the file if it isn't cached.
+            returns null if the file can't be decoded.
+         */
+        BrightnessImgCharMatcher get(byte[] file) {
+            String key = digest(file);
+            synchronized (this) {
+                CachedImage image = cached.get(key);
+                if (image != null) {
+                    hits.incrementAndGet();
+                    return image.matcher;
+                }
+            }
+            misses.incrementAndGet();
+            Image img = Image.fromBytes(file); // decoded outside the lock, so other requests aren't held up
+            if (img == null)
+                return null;
+            CachedImage image = new CachedImage(new BrightnessImgCharMatcher(img, Shell.FONT_NAME),
+                    (long) img.getWidth() * img.getHeight());
+            synchronized (this) {
+                CachedImage other = cached.putIfAbsent(key, image);
+                if (other != null)
+                    return other.matcher;
+                pixels += image.pixels;
+                Iterator<CachedImage> eldest = cached.values().iterator();
+                while (pixels > maxPixels && cached.size() > 1) {
+                    pixels -= eldest.next().pixels;
+                    eldest.remove();
+                }
+            }
+            return image.matcher;
+        }
+
+        synchronized int size() {
+            return cached.size();
+        }
+
+        synchronized long pixels() {
+            return pixels;
+        }
+
+        private static String digest(byte[] file) {
+            try {
+                return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(file));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e); // every JRE has SHA-256
+            }
+        }
+    }
+
+    private static class CachedImage {
+        private final BrightnessImgCharMatcher matcher;
+        private final long pixels;
+
+        CachedImage(BrightnessImgCharMatcher matcher, long pixels) {
+            this.matcher = matcher;
+            this.pixels = pixels;
+        }
+    }
+
+    /*
+        the latencies of the most recent requests, in nanoseconds.
+     */
+    private static class Latencies {
+        private final long[] samples;
+        private long count = 0;
+
+        Latencies(int capacity) {
+            samples = new long[capacity];
+        }
+
+        synchronized void add(long nanos) {
+            samples[(int) (count++ % samples.length)] = nanos;
+        }
+
+        synchronized long[] sorted() {
+            long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, samples.length));
+            Arrays.sort(sorted);
+            return sorted;
+        }
+    }
+}
@@ -1,14 +1,24 @@
 package ascii_art;
 
 import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.Dithering;
+import ascii_art.img_to_char.Equalization;
+import ascii_art.img_to_char.ImgCharMatcher;
+import ascii_art.img_to_char.ShapeImgCharMatcher;
+import ascii_output.AnsiColorAsciiOutput;
 import ascii_output.AsciiOutput;
+import ascii_output.ColorAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
+import ascii_output.HtmlColorAsciiOutput;
+import ascii_output.StreamAsciiOutput;
 import image.Image;
+import metrics.Metrics;
 
+import java.awt.GraphicsEnvironment;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Stream;
+import java.util.stream.IntStream;
 
 /**
  * a class that holds an image.
@@ -16,7 +26,11 @@ import java.util.stream.Stream;
  */
 public class Shell {
     private static final String SHELL_PROMPT = ">>> ";
-    private static final String FONT_NAME = "Courier New";
+    /*
+        when set, the font of the chars, instead of the default one.
+     */
+    private static final String FONT_PROPERTY = "ascii_art.font";
+    static final String FONT_NAME = System.getProperty(FONT_PROPERTY, "Courier New");
     private static final String OUTPUT_FILENAME = "out.html";
     private static final String INITIAL_CHARS_RANGE = "0-9";
     /*    commands     */
@@ -27,28 +41,65 @@ public class Shell {
     private static final String RES_CMD = "res";
     private static final String CONSOLE_CMD = "console";
     private static final String RENDER_CMD = "render";
+    private static final String COLOR_CMD = "color";
+    private static final String STATS_CMD = "stats";
+    private static final String SHAPE_CMD = "shape";
+    private static final String DITHER_CMD = "dither";
+    private static final String EQUALIZE_CMD = "equalize";
+    private static final String FONT_CMD = "font";
     /*    commands specification     */
     private static final String ADD_ALL = "all";
     private static final String ADD_SPACE = "space";
+    private static final String ADD_BLOCKS = "blocks";
+    private static final String ADD_BRAILLE = "braille";
+    private static final String ADD_CJK = "cjk";
     private static final String RES_UP = "up";
     private static final String RES_DOWN = "down";
+    private static final String STATS_ON = "on";
+    private static final String STATS_OFF = "off";
+    private static final String STATS_JSON = "json";
+    private static final String STATS_RESET = "reset";
+    private static final String DITHER_NONE = "none";
+    private static final String DITHER_FLOYD_STEINBERG = "fs";
+    private static final String DITHER_ATKINSON = "atkinson";
+    private static final String DITHER_BAYER = "bayer";
+    private static final String EQUALIZE_NONE = "none";
+    private static final String EQUALIZE_GLOBAL = "global";
+    private static final String EQUALIZE_ADAPTIVE = "adaptive";
     /*    massages     */
     private static final String WIDTH_SET_MSG = "Width set to ";
     private static final String MAXIMAL_RESOLUTION_ERR_MSG = "You're using the maximal resolution";
     private static final String MINIMAL_RESOLUTION_ERR_MSG = "You're using the minimal resolution";
-    private static final String REGEX_PATTERN = "%s|(%s|%s) ((.-.)|%s|%s|.)|%s|%s|%s|(%s (%s|%s))";
+    private static final String FONT_NOT_FOUND_ERR_MSG = "No such font: ";
+    /*    unicode ranges     */
+    private static final char[] BLOCKS_RANGE = {'\u2580', '\u259F'};
+    private static final char[] BRAILLE_RANGE = {'\u2800', '\u28FF'};
+    private static final char[] CJK_RANGE = {'\u4E00', '\u9FFF'};
+    private static final Pattern CODE_POINT_RANGE = Pattern.compile("U\\+(\\p{XDigit}{4})-U\\+(\\p{XDigit}{4})");
+    private static final String REGEX_PATTERN = "%s|(%s|%s) ((.-.)|(U\\+\\p{XDigit}{4}-U\\+\\p{XDigit}{4})|%s|%s|%s|%s|%s|.)|%s|%s|%s|%s|(%s (%s|%s))|(%s( %s| %s| %s| %s)?)|%s|(%s (%s|%s|%s|%s))|(%s (%s|%s|%s))|(%s .+)";
     private static final String SHELL_INPUT_ERR_MSG = "BAD INPUT: USAGE: " + String.format(REGEX_PATTERN,
-            CHARS_CMD, ADD_CMD, REMOVE_CMD, ADD_ALL, ADD_SPACE, EXIT_CMD,
-            RENDER_CMD, CONSOLE_CMD, RES_CMD, RES_UP, RES_DOWN);
+            CHARS_CMD, ADD_CMD, REMOVE_CMD, ADD_ALL, ADD_SPACE, ADD_BLOCKS, ADD_BRAILLE, ADD_CJK, EXIT_CMD,
+            RENDER_CMD, CONSOLE_CMD, COLOR_CMD, RES_CMD, RES_UP, RES_DOWN,
+            STATS_CMD, STATS_ON, STATS_OFF, STATS_JSON, STATS_RESET, SHAPE_CMD,
+            DITHER_CMD, DITHER_NONE, DITHER_FLOYD_STEINBERG, DITHER_ATKINSON, DITHER_BAYER,
+            EQUALIZE_CMD, EQUALIZE_NONE, EQUALIZE_GLOBAL, EQUALIZE_ADAPTIVE, FONT_CMD);
     private final BrightnessImgCharMatcher charMatcher;
-    private final AsciiOutput output;
+    private final ShapeImgCharMatcher shapeMatcher;
+    private AsciiOutput output;
+    private final AsciiOutput consoleOutput = new StreamAsciiOutput(System.out, "");
+    private ColorAsciiOutput colorOutput;
+    private final ColorAsciiOutput colorConsoleOutput = new AnsiColorAsciiOutput(System.out);
     private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final int RENDER_THREADS = Runtime.getRuntime().availableProcessors();
     private final Set<Character> charSet = new HashSet<>();
     private static final int INITIAL_CHARS_IN_ROW = 64;
+    private final int imageWidth;
     private final int minCharsInRow;
-    private final int maxCharsInRow;
+    private int subImageSize;
     private int charsInRow;
     private boolean isConsolePrint;
+    private boolean isColorPrint;
+    private boolean isShapeMatch;
 
     /**
      * Constructor
@@ -57,12 +108,17 @@ public class Shell {
      */
     public Shell(Image img) {
         addChars(INITIAL_CHARS_RANGE);
-        minCharsInRow = Math.max(1, img.getWidth() / img.getHeight());
-        maxCharsInRow = img.getWidth() / MIN_PIXELS_PER_CHAR;
-        charsInRow = Math.max(Math.min(INITIAL_CHARS_IN_ROW, maxCharsInRow), minCharsInRow);
-        charMatcher = new BrightnessImgCharMatcher(img, FONT_NAME);
+        imageWidth = img.getWidth();
+        minCharsInRow = Math.max(1, imageWidth / img.getHeight());
+        subImageSize = initialSubImageSize(imageWidth, minCharsInRow);
+        charsInRow = charsInRow(imageWidth, subImageSize);
+        charMatcher = new BrightnessImgCharMatcher(img, FONT_NAME, RENDER_THREADS);
+        shapeMatcher = new ShapeImgCharMatcher(img, FONT_NAME);
         output = new HtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
+        colorOutput = new HtmlColorAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
         isConsolePrint = false;
+        isColorPrint = false;
+        isShapeMatch = false;
     }
 
     /**
@@ -91,6 +147,24 @@ public class Shell {
                 case CONSOLE_CMD:
                     this.isConsolePrint = true;
                     break;
+                case COLOR_CMD:
+                    this.isColorPrint = !isColorPrint;
+                    break;
+                case DITHER_CMD:
+                    setDithering(userInput.substring(userInput.indexOf(" ") + 1));
+                    break;
+                case EQUALIZE_CMD:
+                    setEqualization(userInput.substring(userInput.indexOf(" ") + 1));
+                    break;
+                case FONT_CMD:
+                    setFont(userInput.substring(userInput.indexOf(" ") + 1));
+                    break;
+                case SHAPE_CMD:
+                    this.isShapeMatch = !isShapeMatch;
+                    break;
+                case STATS_CMD:
+                    stats(userInput.substring(STATS_CMD.length()).trim());
+                    break;
                 case RENDER_CMD:
                     if (!charSet.isEmpty())
                         render();
@@ -109,8 +183,11 @@ public class Shell {
     private String getCommand(String userInput) {
         Matcher m = Pattern.compile(
                         String.format(REGEX_PATTERN,
-                                CHARS_CMD, ADD_CMD, REMOVE_CMD, ADD_ALL, ADD_SPACE, EXIT_CMD,
-                                RENDER_CMD, CONSOLE_CMD, RES_CMD, RES_UP, RES_DOWN))
+                                CHARS_CMD, ADD_CMD, REMOVE_CMD, ADD_ALL, ADD_SPACE, ADD_BLOCKS, ADD_BRAILLE,
+                                ADD_CJK, EXIT_CMD, RENDER_CMD, CONSOLE_CMD, COLOR_CMD, RES_CMD, RES_UP, RES_DOWN,
+                                STATS_CMD, STATS_ON, STATS_OFF, STATS_JSON, STATS_RESET, SHAPE_CMD,
+                                DITHER_CMD, DITHER_NONE, DITHER_FLOYD_STEINBERG, DITHER_ATKINSON, DITHER_BAYER,
+                                EQUALIZE_CMD, EQUALIZE_NONE, EQUALIZE_GLOBAL, EQUALIZE_ADAPTIVE, FONT_CMD))
                 .matcher(userInput);
         if (!m.matches())
             return "";
@@ -128,7 +205,7 @@ public class Shell {
     /*
         extracting the desired adding command given from the user.
      */
-    private static char[] parseCharRange(String param) {
+    static char[] parseCharRange(String param) {
         char[] charsToAdd;
         if (param.length() == 1) { // only one char to add
             charsToAdd = new char[]{param.charAt(0), param.charAt(0)};
@@ -142,10 +219,22 @@ public class Shell {
             charsToAdd = new char[]{' ', ' '};
             return charsToAdd;
         }
+        if (param.equals(ADD_BLOCKS))
+            return BLOCKS_RANGE.clone();
+        if (param.equals(ADD_BRAILLE))
+            return BRAILLE_RANGE.clone();
+        if (param.equals(ADD_CJK))
+            return CJK_RANGE.clone();
         if (param.length() == 3 && param.charAt(1) == '-') { // add range
             charsToAdd = new char[]{param.charAt(0), param.charAt(2)};
             return charsToAdd;
         }
+        Matcher codePoints = CODE_POINT_RANGE.matcher(param);
+        if (codePoints.matches()) { // add range of code points, such as U+2580-U+259F
+            charsToAdd = new char[]{(char) Integer.parseInt(codePoints.group(1), 16),
+                    (char) Integer.parseInt(codePoints.group(2), 16)};
+            return charsToAdd;
+        }
         return null;
 
     }
@@ -157,8 +246,8 @@ public class Shell {
         char[] range = parseCharRange(s);
         if (range != null) {
             // add all range to charSet
-            Stream.iterate(range[0], c -> c <= range[1], c -> (char) ((int) c + 1)).forEach(charSet::add);
-            Stream.iterate(range[1], c -> c <= range[0], c -> (char) ((int) c + 1)).forEach(charSet::add);
+            IntStream.rangeClosed(Math.min(range[0], range[1]), Math.max(range[0], range[1]))
+                    .forEach(c -> charSet.add((char) c));
         }
     }
 
@@ -169,56 +258,149 @@ public class Shell {
         char[] range = parseCharRange(s);
         if (range != null) {
             // remove all range from charSet
-            Stream.iterate(range[0], c -> c <= range[1], c -> (char) ((int) c + 1)).forEach(charSet::remove);
-            Stream.iterate(range[1], c -> c <= range[0], c -> (char) ((int) c + 1)).forEach(charSet::remove);
+            IntStream.rangeClosed(Math.min(range[0], range[1]), Math.max(range[0], range[1]))
+                    .forEach(c -> charSet.remove((char) c));
         }
     }
 
     /*
-        extracting and changing to the desired resolution given from the user.
+        the number of chars in a row of sub images of the given size, the last of which may be cut by the
+        edge of the image. the matchers render exactly this many chars in a row when asked for it.
+     */
+    static int charsInRow(int imageWidth, int subImageSize) {
+        return (imageWidth + subImageSize - 1) / subImageSize;
+    }
+
+    /*
+        the size of the sub images of the initial resolution: the largest power of two that fits at least
+        INITIAL_CHARS_IN_ROW chars in a row, or fewer pixels if that leaves less than minCharsInRow chars.
+        being a power of two, it is halved and doubled exactly by every change of resolution.
+     */
+    static int initialSubImageSize(int imageWidth, int minCharsInRow) {
+        int size = Math.max(MIN_PIXELS_PER_CHAR,
+                Integer.highestOneBit(charsInRow(imageWidth, INITIAL_CHARS_IN_ROW)));
+        while (size > MIN_PIXELS_PER_CHAR && charsInRow(imageWidth, size) < minCharsInRow)
+            size /= 2;
+        return size;
+    }
+
+    /*
+        extracting and changing to the desired resolution given from the user. the resolution is kept as the
+        size of the sub images, which is halved or doubled, so going up and then down returns to the same
+        sub images, and to the brightness grid cached for them. the width is derived from it.
      */
     private void resChange(String s) {
         switch (s) {
             case RES_UP:
-                if (charsInRow * 2 > maxCharsInRow) {
+                if (subImageSize / 2 < MIN_PIXELS_PER_CHAR) {
                     System.out.println(MAXIMAL_RESOLUTION_ERR_MSG);
                     return;
                 }
-                charsInRow *= 2;
+                subImageSize /= 2;
                 break;
             case RES_DOWN:
-                if (charsInRow / 2 < minCharsInRow) {
+                if (subImageSize >= imageWidth || charsInRow(imageWidth, subImageSize * 2) < minCharsInRow) {
                     System.out.println(MINIMAL_RESOLUTION_ERR_MSG);
                     return;
                 }
-                charsInRow /= 2;
+                subImageSize *= 2;
                 break;
             default:
                 return;
         }
+        charsInRow = charsInRow(imageWidth, subImageSize);
         System.out.println(WIDTH_SET_MSG + charsInRow);
     }
 
     /*
-        rendering the image according to user previous specification.
+        choosing how the brightness errors of the chars are spread between neighbouring chars.
      */
-    private void render() {
-        char[][] charsToPrint = charMatcher.chooseChars(charsInRow, charSet.toArray(Character[]::new));
-        if (isConsolePrint)
-            printToConsole(charsToPrint);
-        output.output(charsToPrint);
+    private void setDithering(String s) {
+        switch (s) {
+            case DITHER_FLOYD_STEINBERG:
+                charMatcher.setDithering(Dithering.FLOYD_STEINBERG);
+                break;
+            case DITHER_ATKINSON:
+                charMatcher.setDithering(Dithering.ATKINSON);
+                break;
+            case DITHER_BAYER:
+                charMatcher.setDithering(Dithering.BAYER);
+                break;
+            default:
+                charMatcher.setDithering(Dithering.NONE);
+        }
+    }
 
+    /*
+        choosing how the brightness levels of the image are spread over the full range.
+     */
+    private void setEqualization(String s) {
+        switch (s) {
+            case EQUALIZE_GLOBAL:
+                charMatcher.setEqualization(Equalization.GLOBAL);
+                break;
+            case EQUALIZE_ADAPTIVE:
+                charMatcher.setEqualization(Equalization.ADAPTIVE);
+                break;
+            default:
+                charMatcher.setEqualization(Equalization.NONE);
+        }
     }
 
     /*
-        prints a given chars 2D array to the console.
+        changing the font of the chars, if it is installed. the chars are rendered in the new font on
+        the next render.
      */
-    private void printToConsole(char[][] charsToPrint) {
-        for (char[] chars : charsToPrint) {
-            for (char aChar : chars) {
-                System.out.print(aChar + "");
-            }
-            System.out.println();
+    private void setFont(String fontName) {
+        if (!Arrays.asList(GraphicsEnvironment.getLocalGraphicsEnvironment().getAvailableFontFamilyNames())
+                .contains(fontName)) {
+            System.out.println(FONT_NOT_FOUND_ERR_MSG + fontName);
+            return;
         }
+        charMatcher.setFont(fontName);
+        shapeMatcher.setFont(fontName);
+        output = new HtmlAsciiOutput(OUTPUT_FILENAME, fontName);
+        colorOutput = new HtmlColorAsciiOutput(OUTPUT_FILENAME, fontName);
+    }
+
+    /*
+        reporting the collected metrics, or turning their collection on or off.
+     */
+    private void stats(String s) {
+        switch (s) {
+            case STATS_ON:
+                Metrics.setEnabled(true);
+                break;
+            case STATS_OFF:
+                Metrics.setEnabled(false);
+                break;
+            case STATS_JSON:
+                System.out.println(Metrics.toJson());
+                break;
+            case STATS_RESET:
+                Metrics.reset();
+                break;
+            default:
+                System.out.print(Metrics.report());
+        }
+    }
+
+    /*
+        rendering the image according to user previous specification.
+     */
+    private void render() {
+        ImgCharMatcher matcher = isShapeMatch ? shapeMatcher : charMatcher;
+        char[][] charsToPrint = matcher.chooseChars(charsInRow, charSet.toArray(Character[]::new));
+        if (isColorPrint) {
+            int[][] colors = charMatcher.chooseColors(charsInRow);
+            if (isConsolePrint)
+                colorConsoleOutput.output(charsToPrint, colors);
+            colorOutput.output(charsToPrint, colors);
+            return;
+        }
+        if (isConsolePrint)
+            consoleOutput.output(charsToPrint);
+        output.output(charsToPrint);
+
     }
 }
@@ -0,0 +1,108 @@
+package ascii_art.img_to_char;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of the grids of the average brightness of the sub images of images, one grid per image and
+ * sub image size. Bounded by the memory the grids take rather than by their number, since a grid of
+ * small sub images is many times larger than one of large sub images; the least recently used grids
+ * are evicted once the budget is exceeded.
+ * Grids are keyed by a single long: the id of the image, as given by newImageId, and the sub image size.
+ * Safe for use by multiple threads.
+ */
+public class BrightnessGridCache {
+    private static final long DEFAULT_BUDGET_BYTES = 256L << 20;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final BrightnessGridCache SHARED = new BrightnessGridCache(DEFAULT_BUDGET_BYTES);
+    private static final AtomicLong nextImageId = new AtomicLong();
+
+    private final long budgetBytes;
+    private final LinkedHashMap<Long, double[][]> grids = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    /**
+     * Constructor
+     *
+     * @param budgetBytes the most memory, in bytes, the cached grids may take together.
+     */
+    public BrightnessGridCache(long budgetBytes) {
+        if (budgetBytes <= 0)
+            throw new IllegalArgumentException("budget must be positive");
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * @return the cache shared by the whole process.
+     */
+    public static BrightnessGridCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * @return a new id, unique in the process, to key the grids of an image by.
+     */
+    public static long newImageId() {
+        return nextImageId.incrementAndGet();
+    }
+
+    /**
+     * The cached grid of an image for a sub image size.
+     * The returned grid is shared and must not be modified.
+     *
+     * @return the grid, or null if it isn't cached.
+     */
+    public synchronized double[][] get(long imageId, int subImageSize) {
+        return grids.get(key(imageId, subImageSize));
+    }
+
+    /**
+     * Caches the grid of an image for a sub image size, evicting the least recently used grids if the
+     * budget is exceeded. A grid larger than the whole budget is not cached.
+     * The grid must not be modified after it is cached.
+     */
+    public synchronized void put(long imageId, int subImageSize, double[][] grid) {
+        long gridBytes = bytesOf(grid);
+        if (gridBytes > budgetBytes)
+            return;
+        double[][] replaced = grids.put(key(imageId, subImageSize), grid);
+        bytes += gridBytes - (replaced == null ? 0 : bytesOf(replaced));
+        Iterator<double[][]> eldest = grids.values().iterator();
+        while (bytes > budgetBytes) {
+            bytes -= bytesOf(eldest.next());
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return how many grids are currently cached.
+     */
+    public synchronized int size() {
+        return grids.size();
+    }
+
+    /**
+     * @return about how much memory, in bytes, the cached grids take.
+     */
+    public synchronized long sizeInBytes() {
+        return bytes;
+    }
+
+    /**
+     * Removes all the grids.
+     */
+    public synchronized void clear() {
+        grids.clear();
+        bytes = 0;
+    }
+
+    private static Long key(long imageId, int subImageSize) {
+        return (imageId << Integer.SIZE) | subImageSize;
+    }
+
+    private static long bytesOf(double[][] grid) {
+        long rowBytes = grid.length == 0 ? 0 : ARRAY_HEADER_BYTES + (long) grid[0].length * Double.BYTES;
+        return ARRAY_HEADER_BYTES + (long) grid.length * (Integer.BYTES + rowBytes);
+    }
+}
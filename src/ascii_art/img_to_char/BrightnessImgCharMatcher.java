@@ -1,17 +1,48 @@
 package ascii_art.img_to_char;
 
+import image.BrightnessPyramid;
+import image.ColorIntegralImage;
 import image.Image;
+import image.IntegralImage;
+import image.LuminanceHistogram;
+import metrics.Metrics;
 
-import java.awt.*;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * A class that handles all related brightness matches of a given image to a set of chars.
  */
-public class BrightnessImgCharMatcher {
+public class BrightnessImgCharMatcher implements ImgCharMatcher {
+    private static final int MIN_ROWS_PER_TASK = 4;
+    private static final int CHAR_RESOLUTION = 16;
+    /*
+        the smallest sub images rendered, 2x2 pixels. sub images whose size is reached from it by doubling
+        are read from the brightness pyramid, all others from the summed-area table, so an image whose
+        sizes are all in the pyramid never builds the table.
+     */
+    private static final int PYRAMID_BASE_TILE_SIZE = 2;
+    /*
+        adaptive equalization splits the image to a grid of this many tiles in each direction, and clips
+        the histogram of each tile to this many times the count of a flat histogram.
+     */
+    private static final int EQUALIZATION_TILES = 8;
+    private static final double EQUALIZATION_CLIP_LIMIT = 3;
     private final Image img;
-    private final String font;
-    private final HashMap<Image, Double> cache = new HashMap<>();
+    private volatile String font;
+    private volatile IntegralImage brightnessIndex;
+    private volatile ColorIntegralImage colorIndex;
+    private volatile BrightnessPyramid brightnessPyramid;
+    private volatile LuminanceHistogram histogram;
+    private volatile ContrastMapping contrastMapping;
+    private final long imageId = BrightnessGridCache.newImageId();
+    private volatile BrightnessGridCache gridCache = BrightnessGridCache.shared();
+    private volatile IndexedChars lastIndexedChars;
+    private volatile int parallelism = 1;
+    private volatile Dithering dithering = Dithering.NONE;
+    private volatile Equalization equalization = Equalization.NONE;
+    private volatile ForkJoinPool pool;
 
     /**
      * Constructor
@@ -24,6 +55,71 @@ public class BrightnessImgCharMatcher {
         this.font = font;
     }
 
+    /**
+     * Constructor
+     *
+     * @param img         the given image.
+     * @param font        the given font of the chars to calculate brightness in.
+     * @param parallelism how many threads convert the image to chars. 1 converts on the calling thread.
+     */
+    public BrightnessImgCharMatcher(Image img, String font, int parallelism) {
+        this(img, font);
+        setParallelism(parallelism);
+    }
+
+    /**
+     * Sets how many threads convert the image to chars. The output does not depend on it.
+     *
+     * @param parallelism the number of threads, 1 converts on the calling thread.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        // the old threads are not shut down, as a render running concurrently may still be using them
+        synchronized (this) {
+            pool = null;
+            this.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * Sets the font of the chars. The brightness levels of the chars are indexed again on the next render.
+     *
+     * @param font the name of the font.
+     */
+    public void setFont(String font) {
+        this.font = font;
+        lastIndexedChars = null;
+    }
+
+    /**
+     * Sets the cache the grids of the average brightness of the sub images are kept in, the cache shared by
+     * the whole process by default. Matchers which render their image once, such as those of the frames of
+     * an animation, gain nothing from caching its grids, and would only evict the grids of other images.
+     *
+     * @param gridCache the cache, or null to build the grid of every render anew.
+     */
+    public void setGridCache(BrightnessGridCache gridCache) {
+        this.gridCache = gridCache;
+    }
+
+    /**
+     * Sets how the brightness errors of choosing chars are spread between neighbouring chars.
+     *
+     * @param dithering the kind of dithering, Dithering.NONE to choose each char on its own.
+     */
+    public void setDithering(Dithering dithering) {
+        this.dithering = dithering;
+    }
+
+    /**
+     * Sets how the brightness levels of the image are spread over the full range before choosing chars.
+     *
+     * @param equalization the kind of equalization, Equalization.NONE to use the brightness as it is.
+     */
+    public void setEqualization(Equalization equalization) {
+        this.equalization = equalization;
+    }
 
     /**
      * choosing a set of chars with different brightness level to represent different pixels color and
@@ -33,16 +129,65 @@ public class BrightnessImgCharMatcher {
      * @param charSet       a set of char to choose from.
      * @return a 2D array of the selected chars.
      */
+    @Override
     public char[][] chooseChars(int numCharsInRow, Character[] charSet) {
-        double[] charsBrightnessLevel = getCharsBrightnessLevel(charSet);
+        return chooseChars(numCharsInRow, getCharIndex(charSet));
+    }
+
+    /**
+     * choosing chars to represent the image, out of chars which were already indexed, so that
+     * renders of many images with the same chars index them only once.
+     *
+     * @param numCharsInRow how many char will be printed in a row of the pixel art.
+     * @param charIndex     the chars to choose from, as returned by {@link #indexChars}.
+     * @return a 2D array of the selected chars.
+     */
+    public char[][] chooseChars(int numCharsInRow, CharBrightnessIndex charIndex) {
+        return convertImageToAscii(numCharsInRow, img, charIndex);
+    }
+
+    /**
+     * choosing the color of every char chooseChars chooses for the same numCharsInRow: the average
+     * color of the sub image the char represents.
+     * The first call indexes the colors of the image, apart from its brightness, so renders which don't
+     * choose colors never index them.
+     *
+     * @param numCharsInRow how many char will be printed in a row of the pixel art.
+     * @return a 2D array of packed RGB colors, of the same dimensions as the array of chars.
+     */
+    public int[][] chooseColors(int numCharsInRow) {
+        if (img == null) return null;
+        ColorIntegralImage index = getColorIndex();
+        int pixels = subImageSize(img.getWidth(), numCharsInRow);
+        int[][] colors = new int[ceilDiv(img.getHeight(), pixels)][ceilDiv(img.getWidth(), pixels)];
+        for (int row = 0; row < colors.length; row++) {
+            int y = row * pixels;
+            int height = Math.min(pixels, index.getHeight() - y);
+            for (int col = 0; col < colors[row].length; col++) {
+                int x = col * pixels;
+                colors[row][col] = index.averageColor(x, y, Math.min(pixels, index.getWidth() - x), height);
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * indexing the brightness levels of a set of chars in a font, stretched over the full range.
+     *
+     * @param charSet a set of char to choose from.
+     * @param font    the font of the chars.
+     * @return the index to pass to chooseChars.
+     */
+    public static CharBrightnessIndex indexChars(Character[] charSet, String font) {
+        double[] charsBrightnessLevel = getCharsBrightnessLevel(charSet, font);
         linearStretch(charsBrightnessLevel);
-        return convertImageToAscii(numCharsInRow, img, charSet, charsBrightnessLevel);
+        return new CharBrightnessIndex(charSet, charsBrightnessLevel);
     }
 
     /*
         performing a linear stretch over a given brightness level chars.
      */
-    private void linearStretch(double[] charsBrightnessLevel) {
+    private static void linearStretch(double[] charsBrightnessLevel) {
         double maxBrightness = getMaxBrightness(charsBrightnessLevel);
         double minBrightness = getMinBrightness(charsBrightnessLevel);
         if (maxBrightness <= minBrightness) return;
@@ -55,7 +200,7 @@ public class BrightnessImgCharMatcher {
     /*
         getting tha maximum brightness level in an array.
      */
-    private double getMaxBrightness(double[] charsBrightnessLevel) {
+    private static double getMaxBrightness(double[] charsBrightnessLevel) {
         double maxBrightness = Double.MIN_VALUE;
         for (double level : charsBrightnessLevel) {
             if (level > maxBrightness)
@@ -67,7 +212,7 @@ public class BrightnessImgCharMatcher {
     /*
         getting tha minimum brightness level in an array.
      */
-    private double getMinBrightness(double[] charsBrightnessLevel) {
+    private static double getMinBrightness(double[] charsBrightnessLevel) {
         double minBrightness = Double.MAX_VALUE;
         for (double level : charsBrightnessLevel) {
             if (level < minBrightness)
@@ -79,77 +224,326 @@ public class BrightnessImgCharMatcher {
     /*
         given a set of chars, returning an array with brightness levels of those chars.
      */
-    private double[] getCharsBrightnessLevel(Character[] charSet) {
-        double[] brightnessLevel = new double[charSet.length];
-        for (int i = 0; i < brightnessLevel.length; i++) {
-            boolean[][] img = CharRenderer.getImg(charSet[i], 16, font);
-            int totalTrues = 0;
-            for (boolean[] row : img) {
-                for (boolean col : row) {
-                    if (col)
-                        totalTrues++;
-                }
+    private static double[] getCharsBrightnessLevel(Character[] charSet, String font) {
+        return GlyphCache.shared().getBrightness(charSet, CHAR_RESOLUTION, font);
+    }
+
+    /*
+        returning the summed-area table of the image, building it on first use.
+        it does not depend on the resolution, so it serves every later render of the image.
+        it is never modified after it is built, so the conversion threads can share it freely.
+     */
+    private IntegralImage getBrightnessIndex() {
+        IntegralImage index = brightnessIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = brightnessIndex;
+                if (index == null)
+                    brightnessIndex = index = new IntegralImage(img);
             }
-            brightnessLevel[i] = totalTrues / (16f * 16);
         }
-        return brightnessLevel;
+        return index;
     }
 
     /*
-        given an image, returning the average brightness of the pixels in the image.
+        returning the summed-area tables of the colors of the image, building them on first use, as
+        getBrightnessIndex does for the brightness.
      */
-    private double getImageAverageBrightness(Image img) {
-        if (cache.containsKey(img))
-            return cache.get(img);
-        if (img == null) return -1;
-        double average = 0;
-        double numOfPixels = 0;
-        for (Color pixel : img.pixels()) {
-            double greyPixel = pixel.getRed() * 0.2126 + pixel.getGreen() * 0.7152 + pixel.getBlue() * 0.0722;
-            average += greyPixel / (255);
-            numOfPixels++;
+    private ColorIntegralImage getColorIndex() {
+        ColorIntegralImage index = colorIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = colorIndex;
+                if (index == null)
+                    colorIndex = index = new ColorIntegralImage(img);
+            }
         }
-        cache.put(img, average / numOfPixels);
-        return cache.get(img);
+        return index;
     }
 
     /*
-        building the given image of out of the given chars and their brightness level.
-        making sure there are no more than numCharsInRow chars in a row.
+        building the given image of out of the given chars, looking up the brightness of each sub image
+        in the index of the brightness levels of the chars.
+        making sure there are no more than numCharsInRow chars in a row, and that every pixel of the
+        image is covered by some char.
      */
-    private char[][] convertImageToAscii(int numCharsInRow, Image img,
-                                         Character[] charSet, double[] charsBrightnessLevel) {
+    private char[][] convertImageToAscii(int numCharsInRow, Image img, CharBrightnessIndex charIndex) {
         if (img == null) return null;
-        int pixels = img.getWidth() / numCharsInRow;
-        char[][] asciiArt = new char[img.getHeight() / pixels][img.getWidth() / pixels];
-        int row = 0, col = 0;
-        for (Image subImage : img.squareSubImagesOfSize(pixels)) {
-            double subImageBrightnessLevel = getImageAverageBrightness(subImage);
-            asciiArt[row][col] =
-                    getClosestCharBrightnessWise(subImageBrightnessLevel, charSet, charsBrightnessLevel);
-            col++;
-            if (col == img.getWidth() / pixels) {
-                row++;
-                col = 0;
-            }
+        int pixels = subImageSize(img.getWidth(), numCharsInRow);
+        double[][] grid = equalize(getBrightnessGrid(pixels), pixels);
+        long start = Metrics.start();
+        Dithering dithering = this.dithering;
+        char[][] asciiArt;
+        if (dithering.diffusesError()) {
+            int parallelism = this.parallelism;
+            asciiArt = ErrorDiffusion.match(grid, charIndex, dithering,
+                    parallelism > 1 ? getPool() : null, parallelism);
+        } else {
+            asciiArt = new char[grid.length][grid[0].length];
+            double levelSpacing = 1.0 / Math.max(1, charIndex.numOfLevels() - 1);
+            boolean ordered = dithering == Dithering.BAYER;
+            forEachRowBand(asciiArt.length, (fromRow, toRow) -> {
+                for (int row = fromRow; row < toRow; row++)
+                    for (int col = 0; col < asciiArt[row].length; col++)
+                        asciiArt[row][col] = charIndex.closestChar(ordered ?
+                                grid[row][col] + Dithering.bayerOffset(row, col, levelSpacing) : grid[row][col]);
+            });
         }
+        Metrics.stop(Metrics.Stage.CHAR_MATCHING, start);
+        Metrics.count(Metrics.Counter.CHARS_MATCHED, (long) grid.length * grid[0].length);
         return asciiArt;
     }
 
     /*
-        given an image (or a pixel) returning the char with the closest brightness level to the brightness
-        level of that image out of all other given chars.
+        returning the average brightness of every sub image of the given size, computing them on first use.
+        the grid depends only on the size, so changing the chars only redoes the lookups in it, and
+        returning to a resolution which was already rendered costs nothing, as long as the grid wasn't
+        evicted from the cache of grids.
+        the grids are never modified after they are built, so they are shared by all the threads.
      */
-    private char getClosestCharBrightnessWise(double subImageBrightnessLevel, Character[] charSet,
-                                              double[] charsBrightnessLevel) {
-        double delta = Double.MAX_VALUE;
-        int deltaCharIndex = 0;
-        for (int i = 0; i < charsBrightnessLevel.length; i++) {
-            if (Math.abs(subImageBrightnessLevel - charsBrightnessLevel[i]) < delta) {
-                delta = Math.abs(subImageBrightnessLevel - charsBrightnessLevel[i]);
-                deltaCharIndex = i;
+    private double[][] getBrightnessGrid(int pixels) {
+        BrightnessGridCache cache = gridCache;
+        if (cache != null) {
+            double[][] grid = cache.get(imageId, pixels);
+            if (grid != null) {
+                Metrics.count(Metrics.Counter.GRID_CACHE_HITS, 1);
+                return grid;
             }
+            Metrics.count(Metrics.Counter.GRID_CACHE_MISSES, 1);
+        }
+        double[][] newGrid = new double[ceilDiv(img.getHeight(), pixels)][ceilDiv(img.getWidth(), pixels)];
+        BrightnessPyramid pyramid = isPyramidTileSize(pixels) ? getBrightnessPyramid() : null;
+        IntegralImage index = pyramid == null ? getBrightnessIndex() : null;
+        long start = Metrics.start();
+        if (pyramid != null) {
+            forEachRowBand(newGrid.length, (fromRow, toRow) -> {
+                for (int row = fromRow; row < toRow; row++)
+                    for (int col = 0; col < newGrid[row].length; col++)
+                        newGrid[row][col] = pyramid.averageBrightness(pixels, row, col);
+            });
+        } else {
+            forEachRowBand(newGrid.length, (fromRow, toRow) -> {
+                for (int row = fromRow; row < toRow; row++) {
+                    int y = row * pixels;
+                    int height = Math.min(pixels, index.getHeight() - y);
+                    for (int col = 0; col < newGrid[row].length; col++) {
+                        int x = col * pixels;
+                        newGrid[row][col] =
+                                index.averageBrightness(x, y, Math.min(pixels, index.getWidth() - x), height);
+                    }
+                }
+            });
+        }
+        Metrics.stop(Metrics.Stage.BRIGHTNESS_AVERAGING, start);
+        Metrics.count(Metrics.Counter.TILES_AVERAGED, (long) newGrid.length * newGrid[0].length);
+        if (cache != null)
+            cache.put(imageId, pixels, newGrid);
+        return newGrid;
+    }
+
+    /*
+        returning the brightness of every sub image after equalization, in a new grid, so the cached grid
+        stays as it is for the other kinds of equalization. each sub image is mapped by its average
+        brightness and its center.
+     */
+    private double[][] equalize(double[][] grid, int pixels) {
+        Equalization equalization = this.equalization;
+        if (equalization == Equalization.NONE)
+            return grid;
+        ContrastMapping mapping = getContrastMapping(equalization);
+        long start = Metrics.start();
+        double[] centersX = new double[grid[0].length];
+        for (int col = 0; col < centersX.length; col++) {
+            int x = col * pixels;
+            centersX[col] = x + Math.min(pixels, img.getWidth() - x) / 2.0;
+        }
+        double[][] equalized = new double[grid.length][grid[0].length];
+        forEachRowBand(grid.length, (fromRow, toRow) -> {
+            for (int row = fromRow; row < toRow; row++) {
+                int y = row * pixels;
+                mapping.mapRow(grid[row], centersX, y + Math.min(pixels, img.getHeight() - y) / 2.0, equalized[row]);
+            }
+        });
+        Metrics.stop(Metrics.Stage.CONTRAST_EQUALIZATION, start);
+        return equalized;
+    }
+
+    /*
+        returning the mapping of the given kind of equalization, building it from the histograms of the
+        image if the last one built was of another kind.
+     */
+    private ContrastMapping getContrastMapping(Equalization equalization) {
+        ContrastMapping mapping = contrastMapping;
+        if (mapping == null || mapping.getEqualization() != equalization) {
+            LuminanceHistogram histogram = getHistogram();
+            mapping = equalization == Equalization.GLOBAL ? ContrastMapping.global(histogram) :
+                    ContrastMapping.adaptive(histogram, EQUALIZATION_CLIP_LIMIT);
+            contrastMapping = mapping;
+        }
+        return mapping;
+    }
+
+    /*
+        returning the histograms of the tiles of the image, counting the pixels on first use.
+        the rows are counted in bands over the threads of the matcher, each band into counts of its own,
+        which are added up once the band is done.
+     */
+    private LuminanceHistogram getHistogram() {
+        LuminanceHistogram result = histogram;
+        if (result == null) {
+            synchronized (this) {
+                result = histogram;
+                if (result == null) {
+                    long start = Metrics.start();
+                    LuminanceHistogram newHistogram = new LuminanceHistogram(img.getWidth(), img.getHeight(),
+                            Math.min(EQUALIZATION_TILES, img.getWidth()),
+                            Math.min(EQUALIZATION_TILES, img.getHeight()));
+                    forEachRowBand(img.getHeight(), (fromRow, toRow) -> newHistogram.addRows(img, fromRow, toRow));
+                    Metrics.stop(Metrics.Stage.BRIGHTNESS_INDEXING, start);
+                    Metrics.count(Metrics.Counter.PIXELS_INDEXED, (long) img.getWidth() * img.getHeight());
+                    histogram = result = newHistogram;
+                }
+            }
+        }
+        return result;
+    }
+
+    /*
+        whether the sub images of the given size are the tiles of one of the levels of the pyramid.
+     */
+    private static boolean isPyramidTileSize(int pixels) {
+        return pixels % PYRAMID_BASE_TILE_SIZE == 0 && Integer.bitCount(pixels / PYRAMID_BASE_TILE_SIZE) == 1;
+    }
+
+    /*
+        returning the brightness pyramid of the image, building all its levels on first use.
+     */
+    private BrightnessPyramid getBrightnessPyramid() {
+        BrightnessPyramid pyramid = brightnessPyramid;
+        if (pyramid == null) {
+            synchronized (this) {
+                pyramid = brightnessPyramid;
+                if (pyramid == null)
+                    brightnessPyramid = pyramid = new BrightnessPyramid(img, PYRAMID_BASE_TILE_SIZE);
+            }
+        }
+        return pyramid;
+    }
+
+    /*
+        the index of the brightness levels of the chars, reusing the last one if the chars didn't change.
+     */
+    private CharBrightnessIndex getCharIndex(Character[] charSet) {
+        IndexedChars last = lastIndexedChars;
+        if (last == null || !Arrays.equals(last.charSet, charSet)) {
+            last = new IndexedChars(charSet.clone(), indexChars(charSet, font));
+            lastIndexedChars = last;
+        }
+        return last.charIndex;
+    }
+
+    /*
+        the width and height, in pixels, of the square sub images that fit numCharsInRow of them
+        in a row of an image. the last sub image in a row or column may be cut by the image edge.
+     */
+    static int subImageSize(int imageWidth, int numCharsInRow) {
+        return ceilDiv(imageWidth, numCharsInRow);
+    }
+
+    /**
+     * The number of chars in each row of the pixel art. Sub images are squares of a whole number of pixels,
+     * so when numCharsInRow doesn't divide the width of the image, fewer of them may be needed to cover it.
+     *
+     * @param imageWidth    the width of the image in pixels.
+     * @param numCharsInRow the maximal number of chars in a row of the pixel art.
+     * @return how many chars there will actually be in each row.
+     */
+    public static int numOfCols(int imageWidth, int numCharsInRow) {
+        return ceilDiv(imageWidth, subImageSize(imageWidth, numCharsInRow));
+    }
+
+    static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+
+    /*
+        running the given work over the rows [0, numOfRows), split to bands of rows over the threads of the
+        matcher. each row is handled by a single thread.
+     */
+    private void forEachRowBand(int numOfRows, RowBand work) {
+        int parallelism = this.parallelism;
+        if (parallelism == 1) {
+            work.run(0, numOfRows);
+            return;
+        }
+        int rowsPerTask = Math.max(MIN_ROWS_PER_TASK, numOfRows / (parallelism * 4));
+        getPool().invoke(new RowBandTask(0, numOfRows, rowsPerTask, work));
+    }
+
+    /*
+        returning the threads of the matcher, creating them on first use, as getBrightnessIndex does the
+        summed-area table. setParallelism drops them, and the next use creates them anew. the workers of
+        a ForkJoinPool are daemons which exit once idle for its keep-alive time of a minute, so dropped
+        threads need no shutdown.
+     */
+    private ForkJoinPool getPool() {
+        ForkJoinPool threads = pool;
+        if (threads == null) {
+            synchronized (this) {
+                threads = pool;
+                if (threads == null)
+                    pool = threads = new ForkJoinPool(parallelism);
+            }
+        }
+        return threads;
+    }
+
+    /*
+        work on the rows [fromRow, toRow).
+     */
+    private interface RowBand {
+        void run(int fromRow, int toRow);
+    }
+
+    /*
+        a band of rows, split in half until it is small enough to work on directly.
+     */
+    private static class RowBandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int fromRow;
+        private final int toRow;
+        private final int rowsPerTask;
+        private final RowBand work;
+
+        RowBandTask(int fromRow, int toRow, int rowsPerTask, RowBand work) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.rowsPerTask = rowsPerTask;
+            this.work = work;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= rowsPerTask) {
+                work.run(fromRow, toRow);
+                return;
+            }
+            int middle = (fromRow + toRow) >>> 1;
+            invokeAll(new RowBandTask(fromRow, middle, rowsPerTask, work),
+                    new RowBandTask(middle, toRow, rowsPerTask, work));
+        }
+    }
+
+    /*
+        a set of chars along with the index of their brightness levels.
+     */
+    private static class IndexedChars {
+        private final Character[] charSet;
+        private final CharBrightnessIndex charIndex;
+
+        IndexedChars(Character[] charSet, CharBrightnessIndex charIndex) {
+            this.charSet = charSet;
+            this.charIndex = charIndex;
         }
-        return charSet[deltaCharIndex];
     }
 }
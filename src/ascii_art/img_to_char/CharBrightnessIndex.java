@@ -0,0 +1,118 @@
+package ascii_art.img_to_char;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * A lookup structure from a brightness level to the char of a given set whose brightness is
+ * closest to it. Built once per set of chars, after which a lookup costs a table access for most
+ * brightness levels, and a binary search over the distinct char brightness levels otherwise.
+ * Ties are broken as a linear scan over the set would: the char that appears first in the set wins.
+ */
+public class CharBrightnessIndex {
+    private static final int TABLE_SIZE = 4096;
+    private static final int UNRESOLVED = -1;
+
+    private final double[] levels;
+    private final char[] chars;
+    private final int[] setPositions;
+    private final int[] table = new int[TABLE_SIZE];
+
+    /**
+     * Constructor
+     *
+     * @param charSet              the chars to choose from, non empty.
+     * @param charsBrightnessLevel the brightness level of each char of charSet.
+     */
+    public CharBrightnessIndex(Character[] charSet, double[] charsBrightnessLevel) {
+        if (charSet.length == 0 || charSet.length != charsBrightnessLevel.length)
+            throw new IllegalArgumentException();
+        Integer[] sorted = IntStream.range(0, charSet.length).boxed()
+                .sorted(Comparator.<Integer>comparingDouble(i -> charsBrightnessLevel[i])
+                        .thenComparingInt(i -> i))
+                .toArray(Integer[]::new);
+        // among chars of equal brightness only the first in the set can ever be chosen
+        double[] levels = new double[sorted.length];
+        char[] chars = new char[sorted.length];
+        int[] setPositions = new int[sorted.length];
+        int distinct = 0;
+        for (int i : sorted) {
+            if (distinct > 0 && levels[distinct - 1] == charsBrightnessLevel[i])
+                continue;
+            levels[distinct] = charsBrightnessLevel[i];
+            chars[distinct] = charSet[i];
+            setPositions[distinct] = i;
+            distinct++;
+        }
+        this.levels = Arrays.copyOf(levels, distinct);
+        this.chars = Arrays.copyOf(chars, distinct);
+        this.setPositions = Arrays.copyOf(setPositions, distinct);
+
+        /*
+            the closest char only changes at the midpoints between neighbouring levels, so if both
+            ends of a slot of the table agree on a char, every brightness in between does too.
+         */
+        int lowEnd = search(0);
+        for (int slot = 0; slot < TABLE_SIZE; slot++) {
+            int highEnd = search((slot + 1) / (double) TABLE_SIZE);
+            table[slot] = lowEnd == highEnd ? lowEnd : UNRESOLVED;
+            lowEnd = highEnd;
+        }
+    }
+
+    /**
+     * @param brightness a brightness level.
+     * @return the char with the closest brightness level to the given one.
+     */
+    public char closestChar(double brightness) {
+        return chars[closest(brightness)];
+    }
+
+    /*
+        the position, among the distinct levels, of the level closest to the given brightness.
+     */
+    int closest(double brightness) {
+        if (brightness >= 0 && brightness <= 1) {
+            int slot = Math.min((int) (brightness * TABLE_SIZE), TABLE_SIZE - 1);
+            if (table[slot] != UNRESOLVED)
+                return table[slot];
+        }
+        return search(brightness);
+    }
+
+    /*
+        how many distinct brightness levels the chars have, and the level and char at a position among them.
+     */
+    int numOfLevels() {
+        return levels.length;
+    }
+
+    double levelAt(int position) {
+        return levels[position];
+    }
+
+    char charAt(int position) {
+        return chars[position];
+    }
+
+    /*
+        binary searching for the neighbouring levels of the given brightness, and picking the closer one.
+     */
+    private int search(double brightness) {
+        int high = Arrays.binarySearch(levels, brightness);
+        if (high >= 0)
+            return high;
+        high = -high - 1;
+        if (high == 0)
+            return 0;
+        int low = high - 1;
+        if (high == levels.length)
+            return low;
+        double lowDelta = Math.abs(brightness - levels[low]);
+        double highDelta = Math.abs(brightness - levels[high]);
+        if (lowDelta != highDelta)
+            return lowDelta < highDelta ? low : high;
+        return setPositions[low] < setPositions[high] ? low : high;
+    }
+}
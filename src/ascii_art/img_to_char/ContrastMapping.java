@@ -0,0 +1,142 @@
+package ascii_art.img_to_char;
+
+import image.LuminanceHistogram;
+
+/**
+ * A package-private class of the package img_to_char.
+ * Maps brightness levels to equalized ones, by the cumulative histograms of the tiles of an image.
+ * The cumulative histograms are interpolated linearly within each grey level, so the mapping is
+ * continuous and maps the brightness levels of the image evenly over [0,1].
+ */
+class ContrastMapping {
+    private final LuminanceHistogram histogram;
+    /*
+        the share of the pixels of each tile darker than each grey level, LEVELS + 1 values per tile.
+        a single table for global equalization.
+     */
+    private final double[][] tables;
+    private final Equalization equalization;
+
+    private ContrastMapping(LuminanceHistogram histogram, double[][] tables, Equalization equalization) {
+        this.histogram = histogram;
+        this.tables = tables;
+        this.equalization = equalization;
+    }
+
+    /**
+     * A mapping by the histogram of the whole image.
+     */
+    static ContrastMapping global(LuminanceHistogram histogram) {
+        return new ContrastMapping(histogram, new double[][]{cumulativeShares(histogram.totalCounts())},
+                Equalization.GLOBAL);
+    }
+
+    /**
+     * A mapping by the histogram of every tile, each clipped to clipLimit times the count of a flat
+     * histogram of the tile. The clipped counts are spread evenly over all the levels.
+     */
+    static ContrastMapping adaptive(LuminanceHistogram histogram, double clipLimit) {
+        double[][] tables = new double[histogram.getTilesDown() * histogram.getTilesAcross()][];
+        for (int row = 0; row < histogram.getTilesDown(); row++) {
+            for (int col = 0; col < histogram.getTilesAcross(); col++) {
+                long[] counts = histogram.tileCounts(row, col);
+                tables[row * histogram.getTilesAcross() + col] = cumulativeShares(clip(counts, clipLimit));
+            }
+        }
+        return new ContrastMapping(histogram, tables, Equalization.ADAPTIVE);
+    }
+
+    Equalization getEqualization() {
+        return equalization;
+    }
+
+    /**
+     * Equalizes the brightness of a row of areas of the image, all centered on the same row of pixels.
+     *
+     * @param brightness the brightness of each area, in the range [0,1].
+     * @param centersX   the x coordinate of the center of each area, in pixels.
+     * @param centerY    the y coordinate of the centers of the areas, in pixels.
+     * @param dest       the array to write the equalized brightness of each area to.
+     */
+    void mapRow(double[] brightness, double[] centersX, double centerY, double[] dest) {
+        if (tables.length == 1) {
+            for (int i = 0; i < brightness.length; i++)
+                dest[i] = lookup(tables[0], brightness[i]);
+            return;
+        }
+        int tilesAcross = histogram.getTilesAcross();
+        int tilesDown = histogram.getTilesDown();
+        double tileY = clamp(centerY * tilesDown / histogram.getHeight() - 0.5, tilesDown - 1);
+        int top = (int) tileY;
+        int bottom = Math.min(top + 1, tilesDown - 1);
+        double weightY = tileY - top;
+        // blending the rows of tiles above and below once, the areas then only blend tiles of a row
+        double[][] rowTables = new double[tilesAcross][LuminanceHistogram.LEVELS + 1];
+        for (int col = 0; col < tilesAcross; col++) {
+            double[] upper = tables[top * tilesAcross + col];
+            double[] lower = tables[bottom * tilesAcross + col];
+            for (int level = 0; level <= LuminanceHistogram.LEVELS; level++)
+                rowTables[col][level] = (1 - weightY) * upper[level] + weightY * lower[level];
+        }
+        for (int i = 0; i < brightness.length; i++) {
+            double tileX = clamp(centersX[i] * tilesAcross / histogram.getWidth() - 0.5, tilesAcross - 1);
+            int left = (int) tileX;
+            int right = Math.min(left + 1, tilesAcross - 1);
+            double weightX = tileX - left;
+            dest[i] = (1 - weightX) * lookup(rowTables[left], brightness[i]) +
+                      weightX * lookup(rowTables[right], brightness[i]);
+        }
+    }
+
+    /*
+        the value of a cumulative table at a brightness, interpolated within its grey level.
+     */
+    private static double lookup(double[] table, double brightness) {
+        double position = Math.max(0, Math.min(1, brightness)) * LuminanceHistogram.LEVELS;
+        int level = Math.min((int) position, LuminanceHistogram.LEVELS - 1);
+        return table[level] + (table[level + 1] - table[level]) * (position - level);
+    }
+
+    private static double clamp(double value, int max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    /*
+        the share of the counts below each level. an empty histogram maps every level to itself.
+     */
+    private static double[] cumulativeShares(double[] counts) {
+        double total = 0;
+        for (double count : counts)
+            total += count;
+        double[] shares = new double[counts.length + 1];
+        for (int level = 0; level < counts.length; level++)
+            shares[level + 1] = total > 0 ? shares[level] + counts[level] / total : (level + 1.0) / counts.length;
+        return shares;
+    }
+
+    private static double[] cumulativeShares(long[] counts) {
+        double[] asDoubles = new double[counts.length];
+        for (int level = 0; level < counts.length; level++)
+            asDoubles[level] = counts[level];
+        return cumulativeShares(asDoubles);
+    }
+
+    /*
+        cutting every count down to the limit, and adding what was cut evenly to all the levels.
+     */
+    private static double[] clip(long[] counts, double clipLimit) {
+        long total = 0;
+        for (long count : counts)
+            total += count;
+        double limit = Math.max(1, clipLimit * total / counts.length);
+        double excess = 0;
+        double[] clipped = new double[counts.length];
+        for (int level = 0; level < counts.length; level++) {
+            clipped[level] = Math.min(counts[level], limit);
+            excess += counts[level] - clipped[level];
+        }
+        for (int level = 0; level < counts.length; level++)
+            clipped[level] += excess / counts.length;
+        return clipped;
+    }
+}
@@ -0,0 +1,60 @@
+package ascii_art.img_to_char;
+
+/**
+ * Ways of spreading the difference between the brightness of each sub image and the brightness of the char
+ * chosen for it, so that areas of smoothly changing brightness mix neighbouring chars instead of showing
+ * bands of a single char. Most useful with few chars, such as the digits.
+ */
+public enum Dithering {
+    /**
+     * Every sub image gets the char of the closest brightness.
+     */
+    NONE(null),
+    /**
+     * Error diffusion: 7/16 of the error of each sub image goes to the next one in its row, and 3/16,
+     * 5/16 and 1/16 to the three below it.
+     */
+    FLOYD_STEINBERG(new double[]{7 / 16.0, 0, 3 / 16.0, 5 / 16.0, 1 / 16.0, 0}),
+    /**
+     * Error diffusion: 1/8 of the error of each sub image goes to each of the next two in its row, the
+     * three below it and the one two rows below it. The remaining 1/4 is dropped, which keeps more contrast.
+     */
+    ATKINSON(new double[]{1 / 8.0, 1 / 8.0, 1 / 8.0, 1 / 8.0, 1 / 8.0, 1 / 8.0}),
+    /**
+     * Ordered dithering: the brightness of each sub image is shifted by up to half the distance between
+     * char levels, following a 4x4 Bayer matrix. Each sub image is matched on its own.
+     */
+    BAYER(null);
+
+    private static final int[][] BAYER_MATRIX = {
+            {0, 8, 2, 10},
+            {12, 4, 14, 6},
+            {3, 11, 1, 9},
+            {15, 7, 13, 5}};
+
+    /*
+        the part of the error passed on to the sub images at (row, col + 1), (row, col + 2),
+        (row + 1, col - 1), (row + 1, col), (row + 1, col + 1) and (row + 2, col), in that order.
+     */
+    final double[] diffusionWeights;
+
+    Dithering(double[] diffusionWeights) {
+        this.diffusionWeights = diffusionWeights;
+    }
+
+    /*
+        whether the error of a sub image is passed on to its neighbours, so the sub images can't be
+        matched independently of each other.
+     */
+    boolean diffusesError() {
+        return diffusionWeights != null;
+    }
+
+    /*
+        the shift of the brightness of the sub image at (row, col) for ordered dithering, given the
+        distance between neighbouring char levels.
+     */
+    static double bayerOffset(int row, int col, double levelSpacing) {
+        return ((BAYER_MATRIX[row & 3][col & 3] + 0.5) / 16 - 0.5) * levelSpacing;
+    }
+}
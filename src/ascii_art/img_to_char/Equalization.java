@@ -0,0 +1,25 @@
+package ascii_art.img_to_char;
+
+/**
+ * Ways of spreading the brightness levels of an image over the full range before choosing chars for it,
+ * so that a low contrast image is drawn with all the chars rather than with the two or three chars whose
+ * brightness is closest to its narrow range.
+ */
+public enum Equalization {
+    /**
+     * The brightness of the image is used as it is.
+     */
+    NONE,
+    /**
+     * Histogram equalization: every brightness level is replaced by the share of the pixels of the image
+     * that are at most as bright, so the levels that are common in the image are spread apart.
+     */
+    GLOBAL,
+    /**
+     * Contrast limited adaptive histogram equalization: the image is split to a grid of tiles, each
+     * equalized by its own histogram, and the brightness between tile centers is blended from the
+     * neighbouring tiles. Each histogram is clipped first, which keeps the noise of flat areas from being
+     * stretched over the whole range.
+     */
+    ADAPTIVE
+}
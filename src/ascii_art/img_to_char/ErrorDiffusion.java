@@ -0,0 +1,166 @@
+package ascii_art.img_to_char;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A package-private class of the package img_to_char.
+ * Matches a grid of sub image brightness levels to chars with error diffusion, in parallel.
+ * The error of a sub image only reaches the sub images after it in its row and the sub images near it in
+ * the next two rows, so a row can be matched up to two columns behind the row above it. The rows are dealt
+ * out to the threads in turn, and each thread follows the progress of the row above the one it matches,
+ * so all the threads work at once on consecutive rows, like a pipeline.
+ */
+class ErrorDiffusion {
+    /*
+        how many columns a row matches between announcing its progress to the row below it.
+     */
+    private static final int PROGRESS_STEP = 32;
+    private static final int SPINS_BEFORE_YIELD = 64;
+
+    private final double[][] grid;
+    private final CharBrightnessIndex charIndex;
+    private final double[] weights;
+    private final char[][] asciiArt;
+    /*
+        the error passed on to every sub image by the rows above it. the error passed along a row is kept
+        by the thread matching the row, so every entry here is written by the rows above only.
+     */
+    private final double[][] errors;
+    /*
+        how many columns of each row are done, including the errors they pass on.
+     */
+    private final AtomicIntegerArray progress;
+    private final int cols;
+
+    private ErrorDiffusion(double[][] grid, CharBrightnessIndex charIndex, double[] weights) {
+        this.grid = grid;
+        this.charIndex = charIndex;
+        this.weights = weights;
+        cols = grid[0].length;
+        asciiArt = new char[grid.length][cols];
+        errors = new double[grid.length][cols];
+        progress = new AtomicIntegerArray(grid.length);
+    }
+
+    /**
+     * Matches a grid of brightness levels to chars, passing on the error of each match.
+     *
+     * @param grid        the brightness of every sub image. It is not modified.
+     * @param charIndex   the chars to choose from.
+     * @param dithering   how to pass on the errors, one that diffuses errors.
+     * @param pool        the threads to match with, or null to match on the calling thread.
+     * @param parallelism how many threads of the pool to use.
+     * @return the chars, of the dimensions of the grid.
+     */
+    static char[][] match(double[][] grid, CharBrightnessIndex charIndex, Dithering dithering,
+                          ForkJoinPool pool, int parallelism) {
+        ErrorDiffusion diffusion = new ErrorDiffusion(grid, charIndex, dithering.diffusionWeights);
+        int threads = pool == null ? 1 : Math.min(parallelism, grid.length);
+        if (threads == 1) {
+            diffusion.matchRows(0, 1);
+        } else {
+            RowsTask[] tasks = new RowsTask[threads];
+            for (int i = 0; i < threads; i++)
+                tasks[i] = diffusion.new RowsTask(i, threads);
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                }
+            });
+        }
+        return diffusion.asciiArt;
+    }
+
+    /*
+        matching the rows first, first + step, first + 2 * step and so on.
+     */
+    private void matchRows(int first, int step) {
+        for (int row = first; row < grid.length; row += step)
+            matchRow(row);
+    }
+
+    private void matchRow(int row) {
+        double[] below = row + 1 < grid.length ? errors[row + 1] : null;
+        double[] twoBelow = row + 2 < grid.length ? errors[row + 2] : null;
+        double nextError = 0, secondNextError = 0;
+        for (int col = 0; col < cols; col++) {
+            if (row > 0 && col % PROGRESS_STEP == 0)
+                awaitRowAbove(row, Math.min(col + PROGRESS_STEP + 1, cols));
+            double brightness = grid[row][col] + errors[row][col] + nextError;
+            int closest = charIndex.closest(brightness);
+            asciiArt[row][col] = charIndex.charAt(closest);
+            double error = brightness - charIndex.levelAt(closest);
+
+            nextError = secondNextError + error * weights[0];
+            secondNextError = error * weights[1];
+            if (below != null) {
+                if (col > 0)
+                    below[col - 1] += error * weights[2];
+                below[col] += error * weights[3];
+                if (col + 1 < cols)
+                    below[col + 1] += error * weights[4];
+            }
+            if (twoBelow != null)
+                twoBelow[col] += error * weights[5];
+            if ((col + 1) % PROGRESS_STEP == 0)
+                progress.set(row, col + 1);
+        }
+        progress.set(row, cols);
+    }
+
+    /*
+        waiting until the row above is done up to the given column, so that all the errors the columns
+        before it receive from the rows above are final.
+     */
+    private void awaitRowAbove(int row, int col) {
+        if (progress.get(row - 1) >= col)
+            return;
+        try {
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() {
+                    for (int spins = 0; !isReleasable(); spins++) {
+                        if (spins < SPINS_BEFORE_YIELD)
+                            Thread.onSpinWait();
+                        else
+                            Thread.yield();
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return progress.get(row - 1) >= col;
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while dithering", e);
+        }
+    }
+
+    /*
+        the rows of a single thread of the pipeline.
+     */
+    private class RowsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int first;
+        private final int step;
+
+        RowsTask(int first, int step) {
+            this.first = first;
+            this.step = step;
+        }
+
+        @Override
+        protected void compute() {
+            matchRows(first, step);
+        }
+    }
+}
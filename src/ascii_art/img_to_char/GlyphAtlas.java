@@ -0,0 +1,112 @@
+package ascii_art.img_to_char;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * A package-private class of the package img_to_char.
+ * The binary images of a set of chars in one font and size, packed one after the other into a single
+ * bitmap of longs. Bit y * pixels + x of a char's image is set where the char doesn't cover the pixel
+ * (x, y), as in {@link CharRenderer#getImg}.
+ * The chars are drawn side by side on one large sheet, with a single font and graphics context, and a
+ * sheet is only reused once all its chars are packed. This saves creating an image, a font and a
+ * graphics context for every char, which dominates the time of rendering thousands of chars.
+ */
+class GlyphAtlas {
+    /*
+        the largest width and height of a sheet in pixels, 4MB of pixels.
+     */
+    private static final int MAX_SHEET_SIZE = 1024;
+
+    private final int longsPerGlyph;
+    private final long[] bits;
+
+    private GlyphAtlas(int pixels, long[] bits) {
+        this.longsPerGlyph = longsPerGlyph(pixels);
+        this.bits = bits;
+    }
+
+    /**
+     * Renders a set of chars.
+     *
+     * @param chars    the chars, whose images are packed in this order.
+     * @param pixels   the width and height of the image of a char.
+     * @param fontName the font to draw the chars in.
+     */
+    static GlyphAtlas render(char[] chars, int pixels, String fontName) {
+        int longsPerGlyph = longsPerGlyph(pixels);
+        long[] bits = new long[chars.length * longsPerGlyph];
+        if (chars.length == 0)
+            return new GlyphAtlas(pixels, bits);
+        int cellsPerSide = Math.max(1, Math.min((int) Math.ceil(Math.sqrt(chars.length)), MAX_SHEET_SIZE / pixels));
+        int sheetSize = cellsPerSide * pixels;
+        BufferedImage sheet = new BufferedImage(sheetSize, sheetSize, BufferedImage.TYPE_INT_ARGB);
+        int[] sheetPixels = ((DataBufferInt) sheet.getRaster().getDataBuffer()).getData();
+        Graphics g = sheet.getGraphics();
+        g.setFont(new Font(fontName, Font.PLAIN, pixels));
+        int xOffset = (int) Math.round(pixels * CharRenderer.X_OFFSET_FACTOR);
+        int yOffset = (int) Math.round(pixels * CharRenderer.Y_OFFSET_FACTOR);
+        int cellsPerSheet = cellsPerSide * cellsPerSide;
+        for (int first = 0; first < chars.length; first += cellsPerSheet) {
+            int count = Math.min(cellsPerSheet, chars.length - first);
+            if (first > 0)
+                Arrays.fill(sheetPixels, 0);
+            for (int cell = 0; cell < count; cell++) {
+                int left = (cell % cellsPerSide) * pixels;
+                int top = (cell / cellsPerSide) * pixels;
+                // a char may reach out of its square, which must not draw over its neighbours
+                g.setClip(left, top, pixels, pixels);
+                g.drawChars(chars, first + cell, 1, left + xOffset, top + yOffset);
+            }
+            for (int cell = 0; cell < count; cell++)
+                pack(sheetPixels, sheetSize, (cell % cellsPerSide) * pixels, (cell / cellsPerSide) * pixels,
+                        pixels, bits, (first + cell) * longsPerGlyph);
+        }
+        g.dispose();
+        return new GlyphAtlas(pixels, bits);
+    }
+
+    /**
+     * @return how many longs the image of a char of the given size takes.
+     */
+    static int longsPerGlyph(int pixels) {
+        return (pixels * pixels + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * @return a copy of the packed image of the char at the given position.
+     */
+    long[] glyphBits(int index) {
+        return Arrays.copyOfRange(bits, index * longsPerGlyph, (index + 1) * longsPerGlyph);
+    }
+
+    /**
+     * Unpacks a packed image of a char, starting at the given offset of the bitmap.
+     */
+    static boolean[][] unpack(long[] bits, int offset, int pixels) {
+        boolean[][] img = new boolean[pixels][pixels];
+        for (int y = 0; y < pixels; y++)
+            for (int x = 0; x < pixels; x++) {
+                int bit = y * pixels + x;
+                img[y][x] = (bits[offset + (bit >>> 6)] & (1L << (bit & 63))) != 0;
+            }
+        return img;
+    }
+
+    /*
+        setting the bits of the pixels of a square of the sheet which were not drawn on.
+     */
+    private static void pack(int[] sheetPixels, int sheetSize, int left, int top, int pixels,
+                             long[] bits, int offset) {
+        for (int y = 0; y < pixels; y++) {
+            int rowStart = (top + y) * sheetSize + left;
+            for (int x = 0; x < pixels; x++)
+                if (sheetPixels[rowStart + x] == 0) { // is the color black
+                    int bit = y * pixels + x;
+                    bits[offset + (bit >>> 6)] |= 1L << (bit & 63);
+                }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package ascii_art.img_to_char;
+
+import metrics.Metrics;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A cache of rendered characters, keyed by font, size in pixels and character.
+ * Holds both the binary image of each character, packed as bits, and its brightness level, evicting
+ * the least recently used characters once full. Characters missing from a requested set are rendered
+ * together, in a single {@link GlyphAtlas}. Can be saved to and loaded from a small file, so a new
+ * process doesn't have to render the same characters again.
+ * Safe for use by multiple threads.
+ */
+public class GlyphCache {
+    /*
+        every char of the basic multilingual plane in a single font and size.
+     */
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static final int FILE_MAGIC = 0x47_4C_59_46; // "GLYF"
+    private static final int FILE_VERSION = 1;
+    private static final GlyphCache SHARED = new GlyphCache(DEFAULT_CAPACITY);
+
+    private final Map<Key, Glyph> glyphs;
+
+    /**
+     * Constructor
+     *
+     * @param capacity the maximal number of characters to keep.
+     */
+    public GlyphCache(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        glyphs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Glyph> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the cache shared by the whole process.
+     */
+    public static GlyphCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * The binary image of a character, rendering it if it isn't cached.
+     * The returned array is shared and must not be modified.
+     */
+    public boolean[][] getImg(char c, int pixels, String fontName) {
+        return getGlyphs(new Character[]{c}, pixels, fontName)[0].img();
+    }
+
+    /**
+     * The brightness level of a character, in the range [0,1]: the part of its
+     * binary image which is not covered by the character.
+     */
+    public double getBrightness(char c, int pixels, String fontName) {
+        return getGlyphs(new Character[]{c}, pixels, fontName)[0].brightness;
+    }
+
+    /**
+     * The brightness levels of a set of characters, rendering the ones which aren't cached together.
+     *
+     * @param charSet  the characters.
+     * @param pixels   the width and height of the binary images of the characters.
+     * @param fontName the font of the characters.
+     * @return the brightness level of each character of the set, in the same order.
+     */
+    public double[] getBrightness(Character[] charSet, int pixels, String fontName) {
+        Glyph[] glyphs = getGlyphs(charSet, pixels, fontName);
+        double[] brightness = new double[glyphs.length];
+        for (int i = 0; i < glyphs.length; i++)
+            brightness[i] = glyphs[i].brightness;
+        return brightness;
+    }
+
+    /**
+     * The binary images of a set of characters packed one after the other as bits, rendering the ones
+     * which aren't cached together. Each image takes (pixels * pixels + 63) / 64 longs, and bit
+     * y * pixels + x of an image is set where the character doesn't cover the pixel (x, y).
+     *
+     * @param charSet  the characters.
+     * @param pixels   the width and height of the binary images of the characters.
+     * @param fontName the font of the characters.
+     * @return the packed images of the characters of the set, in the same order.
+     */
+    public long[] getPackedImgs(Character[] charSet, int pixels, String fontName) {
+        Glyph[] glyphs = getGlyphs(charSet, pixels, fontName);
+        int longsPerGlyph = GlyphAtlas.longsPerGlyph(pixels);
+        long[] packed = new long[glyphs.length * longsPerGlyph];
+        for (int i = 0; i < glyphs.length; i++)
+            System.arraycopy(glyphs[i].bits, 0, packed, i * longsPerGlyph, longsPerGlyph);
+        return packed;
+    }
+
+    /**
+     * @return how many characters are currently cached.
+     */
+    public synchronized int size() {
+        return glyphs.size();
+    }
+
+    /**
+     * Removes all cached characters.
+     */
+    public synchronized void clear() {
+        glyphs.clear();
+    }
+
+    /**
+     * Saves the cached characters to a file.
+     *
+     * @param file the file to write, replaced if it exists.
+     */
+    public void save(Path file) throws IOException {
+        Map<Key, Glyph> snapshot;
+        synchronized (this) {
+            snapshot = new LinkedHashMap<>(glyphs);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<Key, Glyph> entry : snapshot.entrySet()) {
+                Key key = entry.getKey();
+                out.writeUTF(key.fontName);
+                out.writeInt(key.pixels);
+                out.writeChar(key.c);
+                out.write(toBytes(entry.getValue().bits, key.pixels));
+            }
+        }
+    }
+
+    /**
+     * Adds the characters saved in a file to the cache.
+     *
+     * @param file a file written by {@link #save(Path)}.
+     */
+    public void load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION)
+                throw new IOException("Not a glyph cache file: " + file);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String fontName = in.readUTF();
+                int pixels = in.readInt();
+                char c = in.readChar();
+                if (pixels <= 0)
+                    throw new IOException("Corrupt glyph cache file: " + file);
+                byte[] packed = new byte[(pixels * pixels + 7) / 8];
+                in.readFully(packed);
+                Glyph glyph = new Glyph(fromBytes(packed, pixels), pixels);
+                synchronized (this) {
+                    glyphs.put(new Key(c, pixels, fontName), glyph);
+                }
+            }
+        }
+    }
+
+    /*
+        the glyphs of a set of characters. the characters which aren't cached are rendered outside the
+        lock, all in one atlas; a race only renders the same characters twice.
+     */
+    private Glyph[] getGlyphs(Character[] charSet, int pixels, String fontName) {
+        Glyph[] glyphs = new Glyph[charSet.length];
+        Map<Character, Integer> missing = new LinkedHashMap<>();
+        synchronized (this) {
+            for (int i = 0; i < charSet.length; i++) {
+                glyphs[i] = this.glyphs.get(new Key(charSet[i], pixels, fontName));
+                if (glyphs[i] == null)
+                    missing.putIfAbsent(charSet[i], missing.size());
+            }
+        }
+        Metrics.count(Metrics.Counter.GLYPH_CACHE_HITS, charSet.length - missing.size());
+        if (missing.isEmpty())
+            return glyphs;
+        Metrics.count(Metrics.Counter.GLYPH_CACHE_MISSES, missing.size());
+        char[] chars = new char[missing.size()];
+        for (Map.Entry<Character, Integer> entry : missing.entrySet())
+            chars[entry.getValue()] = entry.getKey();
+        long start = Metrics.start();
+        GlyphAtlas atlas = GlyphAtlas.render(chars, pixels, fontName);
+        Metrics.stop(Metrics.Stage.GLYPH_RENDERING, start);
+        Glyph[] rendered = new Glyph[chars.length];
+        for (int i = 0; i < chars.length; i++)
+            rendered[i] = new Glyph(atlas.glyphBits(i), pixels);
+        synchronized (this) {
+            for (int i = 0; i < chars.length; i++)
+                this.glyphs.put(new Key(chars[i], pixels, fontName), rendered[i]);
+        }
+        for (int i = 0; i < charSet.length; i++)
+            if (glyphs[i] == null)
+                glyphs[i] = rendered[missing.get(charSet[i])];
+        return glyphs;
+    }
+
+    /*
+        the bits of a packed image as bytes, the lowest bits first, as they are saved.
+     */
+    private static byte[] toBytes(long[] bits, int pixels) {
+        byte[] bytes = new byte[(pixels * pixels + 7) / 8];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) (bits[i >>> 3] >>> ((i & 7) * Byte.SIZE));
+        return bytes;
+    }
+
+    private static long[] fromBytes(byte[] bytes, int pixels) {
+        long[] bits = new long[GlyphAtlas.longsPerGlyph(pixels)];
+        for (int i = 0; i < bytes.length; i++)
+            bits[i >>> 3] |= (bytes[i] & 0xFFL) << ((i & 7) * Byte.SIZE);
+        return bits;
+    }
+
+    /*
+        a rendered character and its brightness level. the boolean image is only unpacked if asked for,
+        the brightness matching only needs the level.
+     */
+    private static class Glyph {
+        private final long[] bits;
+        private final int pixels;
+        private final double brightness;
+        private volatile boolean[][] img;
+
+        Glyph(long[] bits, int pixels) {
+            this.bits = bits;
+            this.pixels = pixels;
+            int totalTrues = 0;
+            for (long word : bits)
+                totalTrues += Long.bitCount(word);
+            brightness = totalTrues / ((float) pixels * pixels);
+        }
+
+        boolean[][] img() {
+            boolean[][] result = img;
+            if (result == null)
+                img = result = GlyphAtlas.unpack(bits, 0, pixels);
+            return result;
+        }
+    }
+
+    private static class Key {
+        private final char c;
+        private final int pixels;
+        private final String fontName;
+
+        Key(char c, int pixels, String fontName) {
+            this.c = c;
+            this.pixels = pixels;
+            this.fontName = fontName;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(c, pixels, fontName);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return c == other.c && pixels == other.pixels && fontName.equals(other.fontName);
+        }
+    }
+}
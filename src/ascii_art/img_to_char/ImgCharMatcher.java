@@ -0,0 +1,15 @@
+package ascii_art.img_to_char;
+
+/**
+ * Chooses the chars which represent an image, one char per square sub image.
+ */
+public interface ImgCharMatcher {
+    /**
+     * choosing a char out of a set of chars to represent each sub image of the image.
+     *
+     * @param numCharsInRow how many char will be printed in a row of the pixel art.
+     * @param charSet       a set of char to choose from.
+     * @return a 2D array of the selected chars.
+     */
+    char[][] chooseChars(int numCharsInRow, Character[] charSet);
+}
@@ -0,0 +1,116 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.IntegralImage;
+
+import java.util.Arrays;
+
+/**
+ * Matches the sub images of an image to chars by shape rather than by brightness alone.
+ * Each sub image is scaled to the size of the rendered chars and turned black and white, then compared
+ * to the image of every char, pixel by pixel. The char that differs from it in the fewest pixels is
+ * chosen, so edges and lines in the image are drawn by chars of a similar shape.
+ * The images are kept as bits packed in longs, so comparing two images is an XOR and a bit count per
+ * 64 pixels.
+ */
+public class ShapeImgCharMatcher implements ImgCharMatcher {
+    private static final int CHAR_RESOLUTION = 16;
+    private static final int LONGS_PER_GLYPH = (CHAR_RESOLUTION * CHAR_RESOLUTION + Long.SIZE - 1) / Long.SIZE;
+    private final Image img;
+    private String font;
+    private IntegralImage brightnessIndex;
+    private double threshold;
+
+    /**
+     * Constructor
+     *
+     * @param img  the given image.
+     * @param font the given font of the chars to compare to.
+     */
+    public ShapeImgCharMatcher(Image img, String font) {
+        this.img = img;
+        this.font = font;
+    }
+
+    /**
+     * Sets the font of the chars to compare to.
+     *
+     * @param font the name of the font.
+     */
+    public synchronized void setFont(String font) {
+        this.font = font;
+    }
+
+    @Override
+    public synchronized char[][] chooseChars(int numCharsInRow, Character[] charSet) {
+        if (img == null) return null;
+        if (brightnessIndex == null) {
+            brightnessIndex = new IntegralImage(img);
+            threshold = brightnessIndex.averageBrightness(0, 0, img.getWidth(), img.getHeight());
+        }
+        long[] glyphs = packGlyphs(charSet);
+        int pixels = BrightnessImgCharMatcher.subImageSize(img.getWidth(), numCharsInRow);
+        char[][] asciiArt = new char[BrightnessImgCharMatcher.ceilDiv(img.getHeight(), pixels)]
+                [BrightnessImgCharMatcher.ceilDiv(img.getWidth(), pixels)];
+        long[] tile = new long[LONGS_PER_GLYPH];
+        for (int row = 0; row < asciiArt.length; row++) {
+            int y = row * pixels;
+            int height = Math.min(pixels, img.getHeight() - y);
+            for (int col = 0; col < asciiArt[row].length; col++) {
+                int x = col * pixels;
+                packTile(x, y, Math.min(pixels, img.getWidth() - x), height, tile);
+                asciiArt[row][col] = charSet[closestGlyph(tile, glyphs)];
+            }
+        }
+        return asciiArt;
+    }
+
+    /*
+        packing the images of the chars one after the other, LONGS_PER_GLYPH longs each.
+        a set bit is a pixel not covered by the char, like a bright pixel of the image.
+     */
+    private long[] packGlyphs(Character[] charSet) {
+        return GlyphCache.shared().getPackedImgs(charSet, CHAR_RESOLUTION, font);
+    }
+
+    /*
+        scaling a sub image to the size of the images of the chars, and packing it black and white: a bit is
+        set where the sub image is brighter than the average of the whole image.
+        a sub image smaller than the images of the chars repeats its pixels.
+     */
+    private void packTile(int x, int y, int width, int height, long[] tile) {
+        Arrays.fill(tile, 0);
+        for (int cellY = 0; cellY < CHAR_RESOLUTION; cellY++) {
+            int top = y + cellY * height / CHAR_RESOLUTION;
+            int bottom = Math.max(top + 1, y + (cellY + 1) * height / CHAR_RESOLUTION);
+            for (int cellX = 0; cellX < CHAR_RESOLUTION; cellX++) {
+                int left = x + cellX * width / CHAR_RESOLUTION;
+                int right = Math.max(left + 1, x + (cellX + 1) * width / CHAR_RESOLUTION);
+                if (brightnessIndex.averageBrightness(left, top, right - left, bottom - top) > threshold)
+                    setBit(tile, 0, cellY * CHAR_RESOLUTION + cellX);
+            }
+        }
+    }
+
+    /*
+        the index of the char whose image differs from the tile in the fewest pixels, the first one on a tie.
+     */
+    private static int closestGlyph(long[] tile, long[] glyphs) {
+        int closest = 0;
+        int minDistance = Integer.MAX_VALUE;
+        for (int glyph = 0, offset = 0; offset < glyphs.length; glyph++, offset += LONGS_PER_GLYPH) {
+            int distance = 0;
+            for (int i = 0; i < LONGS_PER_GLYPH; i++)
+                distance += Long.bitCount(tile[i] ^ glyphs[offset + i]);
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = glyph;
+            }
+        }
+        return closest;
+    }
+
+    private static void setBit(long[] bits, int offset, int bit) {
+        bits[offset + (bit >>> 6)] |= 1L << (bit & 63);
+    }
+}
@@ -0,0 +1,103 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.ImageStrips;
+import image.IntegralImage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Matches chars by brightness to an image that is decoded one strip at a time, so that only one
+ * row of chars worth of pixels is ever held in memory. Meant for images too large for
+ * {@link BrightnessImgCharMatcher}, which needs the whole image.
+ * Sub images are chosen exactly as {@link BrightnessImgCharMatcher} chooses them, so both render
+ * the same chars for the same file.
+ */
+public class StripImgCharMatcher {
+    private final ImageStrips strips;
+    private final String font;
+
+    /**
+     * Constructor
+     *
+     * @param strips the image to read.
+     * @param font   the given font of the chars to calculate brightness in.
+     */
+    public StripImgCharMatcher(ImageStrips strips, String font) {
+        this.strips = strips;
+        this.font = font;
+    }
+
+    /**
+     * choosing chars to represent the image, handing each row of chars on as soon as its strip is read.
+     *
+     * @param numCharsInRow how many char will be printed in a row of the pixel art.
+     * @param charSet       a set of char to choose from.
+     * @param rowConsumer   receives the rows of chars, from top to bottom.
+     */
+    public void chooseChars(int numCharsInRow, Character[] charSet, Consumer<char[]> rowConsumer)
+            throws IOException {
+        chooseChars(numCharsInRow, BrightnessImgCharMatcher.indexChars(charSet, font), rowConsumer);
+    }
+
+    /**
+     * choosing chars to represent the image out of chars which were already indexed, handing each row of
+     * chars on as soon as its strip is read.
+     *
+     * @param numCharsInRow how many char will be printed in a row of the pixel art.
+     * @param charIndex     the chars to choose from, as returned by {@link BrightnessImgCharMatcher#indexChars}.
+     * @param rowConsumer   receives the rows of chars, from top to bottom.
+     */
+    public void chooseChars(int numCharsInRow, CharBrightnessIndex charIndex, Consumer<char[]> rowConsumer)
+            throws IOException {
+        int pixels = BrightnessImgCharMatcher.subImageSize(strips.getWidth(), numCharsInRow);
+        int numOfCols = getNumOfCols(numCharsInRow);
+        int numOfRows = BrightnessImgCharMatcher.ceilDiv(strips.getHeight(), pixels);
+        for (int row = 0; row < numOfRows; row++) {
+            Image strip = strips.readStrip(row * pixels, pixels);
+            IntegralImage index = new IntegralImage(strip);
+            char[] chars = new char[numOfCols];
+            for (int col = 0; col < numOfCols; col++) {
+                int x = col * pixels;
+                chars[col] = charIndex.closestChar(index.averageBrightness(
+                        x, 0, Math.min(pixels, strip.getWidth() - x), strip.getHeight()));
+            }
+            rowConsumer.accept(chars);
+        }
+    }
+
+    /**
+     * @param numCharsInRow the maximal number of chars in a row of the pixel art.
+     * @return how many chars there will actually be in each row.
+     */
+    public int getNumOfCols(int numCharsInRow) {
+        return BrightnessImgCharMatcher.numOfCols(strips.getWidth(), numCharsInRow);
+    }
+
+    /**
+     * choosing chars to represent the image.
+     *
+     * @param numCharsInRow how many char will be printed in a row of the pixel art.
+     * @param charSet       a set of char to choose from.
+     * @return a 2D array of the selected chars.
+     */
+    public char[][] chooseChars(int numCharsInRow, Character[] charSet) throws IOException {
+        return chooseChars(numCharsInRow, BrightnessImgCharMatcher.indexChars(charSet, font));
+    }
+
+    /**
+     * choosing chars to represent the image, out of chars which were already indexed.
+     *
+     * @param numCharsInRow how many char will be printed in a row of the pixel art.
+     * @param charIndex     the chars to choose from, as returned by {@link BrightnessImgCharMatcher#indexChars}.
+     * @return a 2D array of the selected chars.
+     */
+    public char[][] chooseChars(int numCharsInRow, CharBrightnessIndex charIndex) throws IOException {
+        List<char[]> rows = new ArrayList<>();
+        chooseChars(numCharsInRow, charIndex, rows::add);
+        return rows.toArray(char[][]::new);
+    }
+}
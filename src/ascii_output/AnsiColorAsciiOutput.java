@@ -0,0 +1,66 @@
+package ascii_output;
+
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of colored chars to a terminal which supports 24 bit ANSI colors.
+ * A color escape sequence is written only where the color changes, and the whole frame is
+ * written to the stream with a single bulk write.
+ */
+public class AnsiColorAsciiOutput implements ColorAsciiOutput {
+    private static final String ESCAPE = "\u001b[";
+    private static final String RESET = ESCAPE + "0m";
+
+    private final OutputStream out;
+    private final String lineSeparator = System.lineSeparator();
+    private final StringBuilder frame = new StringBuilder();
+
+    /**
+     * Constructor
+     *
+     * @param out the stream to write to, usually System.out. It is not closed by this object.
+     */
+    public AnsiColorAsciiOutput(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void output(char[][] chars, int[][] colors) {
+        long start = Metrics.start();
+        frame.setLength(0);
+        for (int y = 0; y < chars.length; y++) {
+            int previous = -1;
+            for (int x = 0; x < chars[y].length; x++) {
+                int color = colors[y][x] & 0xFFFFFF;
+                if (color != previous) {
+                    appendColor(frame, color);
+                    previous = color;
+                }
+                frame.append(chars[y][x]);
+            }
+            frame.append(RESET).append(lineSeparator);
+        }
+        try {
+            out.write(frame.toString().getBytes(Charset.defaultCharset()));
+            out.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write ascii art: " + e.getMessage());
+        }
+        Metrics.stop(Metrics.Stage.OUTPUT, start);
+    }
+
+    /*
+        appending the escape sequence that sets the color of the following chars.
+     */
+    static void appendColor(StringBuilder text, int color) {
+        text.append(ESCAPE).append("38;2;")
+            .append((color >> 16) & 0xFF).append(';')
+            .append((color >> 8) & 0xFF).append(';')
+            .append(color & 0xFF).append('m');
+    }
+}
@@ -0,0 +1,24 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output a 2D array of chars,
+ * each drawn in its own color, in some fashion.
+ */
+public interface ColorAsciiOutput extends AsciiOutput {
+    /**
+     * Output the specified 2D array of chars, each in the color at the same position
+     * of the specified 2D array of packed RGB colors.
+     */
+    void output(char[][] chars, int[][] colors);
+
+    /**
+     * Output the specified 2D array of chars, all in black.
+     */
+    @Override
+    default void output(char[][] chars) {
+        int[][] colors = new int[chars.length][];
+        for (int y = 0; y < chars.length; y++)
+            colors[y] = new int[chars[y].length];
+        output(chars, colors);
+    }
+}
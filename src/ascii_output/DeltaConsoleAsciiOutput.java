@@ -0,0 +1,102 @@
+package ascii_output;
+
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+/**
+ * Output successive frames of chars to an ANSI terminal, drawing each frame over the previous one.
+ * In delta mode only the cells that changed since the previous frame are rewritten, by moving the
+ * cursor to each run of changed cells, so still parts of an animation cost nothing to redraw.
+ */
+public class DeltaConsoleAsciiOutput implements AsciiOutput {
+    private static final String ESCAPE = "\u001b[";
+    private static final String CLEAR_SCREEN = ESCAPE + "2J";
+    private static final String CURSOR_HOME = ESCAPE + "H";
+
+    private final OutputStream out;
+    private final boolean deltaOnly;
+    private final StringBuilder frame = new StringBuilder();
+    private char[][] previous;
+
+    /**
+     * Constructor
+     *
+     * @param out       the stream to write to, usually System.out. It is not closed by this object.
+     * @param deltaOnly whether to rewrite only the changed cells, rather than the whole frame.
+     */
+    public DeltaConsoleAsciiOutput(OutputStream out, boolean deltaOnly) {
+        this.out = out;
+        this.deltaOnly = deltaOnly;
+    }
+
+    @Override
+    public synchronized void output(char[][] chars) {
+        long start = Metrics.start();
+        frame.setLength(0);
+        if (previous == null || !sameDimensions(previous, chars)) {
+            frame.append(CLEAR_SCREEN).append(CURSOR_HOME);
+            appendAll(chars);
+        } else if (!deltaOnly) {
+            frame.append(CURSOR_HOME);
+            appendAll(chars);
+        } else {
+            appendChanges(chars);
+            moveCursor(chars.length, 0);
+        }
+        previous = copy(chars);
+        try {
+            out.write(frame.toString().getBytes(Charset.defaultCharset()));
+            out.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write ascii art: " + e.getMessage());
+        }
+        Metrics.stop(Metrics.Stage.OUTPUT, start);
+    }
+
+    private void appendAll(char[][] chars) {
+        for (char[] row : chars)
+            frame.append(row).append('\n');
+    }
+
+    /*
+        appending a cursor move to the start of every run of changed cells, followed by the run.
+     */
+    private void appendChanges(char[][] chars) {
+        for (int y = 0; y < chars.length; y++) {
+            int x = 0;
+            while (x < chars[y].length) {
+                if (chars[y][x] == previous[y][x]) {
+                    x++;
+                    continue;
+                }
+                moveCursor(y, x);
+                for (; x < chars[y].length && chars[y][x] != previous[y][x]; x++)
+                    frame.append(chars[y][x]);
+            }
+        }
+    }
+
+    private void moveCursor(int row, int col) {
+        frame.append(ESCAPE).append(row + 1).append(';').append(col + 1).append('H');
+    }
+
+    private static boolean sameDimensions(char[][] first, char[][] second) {
+        if (first.length != second.length)
+            return false;
+        for (int y = 0; y < first.length; y++)
+            if (first[y].length != second[y].length)
+                return false;
+        return true;
+    }
+
+    private static char[][] copy(char[][] chars) {
+        char[][] copy = new char[chars.length][];
+        for (int y = 0; y < chars.length; y++)
+            copy[y] = chars[y].clone();
+        return copy;
+    }
+}
@@ -1,8 +1,19 @@
 package ascii_output;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import metrics.Metrics;
+
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
 /**
@@ -12,52 +23,235 @@ import java.util.logging.Logger;
 public class HtmlAsciiOutput implements AsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
+    private static final int PAGE_SIZE = 256;
+    static final String FOOTER =
+            "</p>\n"+
+            "</body>\n"+
+            "</html>\n";
 
     private final String fontName;
     private final String filename;
+    private final Charset charset = Charset.defaultCharset();
+    /*
+        some charsets start every encoded string with a byte order mark. it is written once
+        at the start of the file, and stripped from everything encoded after it.
+     */
+    private final int byteOrderMarkLength =
+            2 * "a".getBytes(charset).length - "aa".getBytes(charset).length;
+    private final byte[] lineSeparator = encode(System.lineSeparator());
+    private final byte[] spanEnd = encode("</span>");
+    /*
+        the encoded html representation of each char, in pages of 256 chars which are
+        filled the first time one of their chars is written.
+     */
+    private final AtomicReferenceArray<byte[][]> encodedChars =
+            new AtomicReferenceArray<>(Character.MAX_VALUE / PAGE_SIZE + 1);
 
+    /**
+     * @param filename the file to write, or null for output only through {@link #open(WritableByteChannel, int)}
+     * @param fontName the font to show the chars in
+     */
     public HtmlAsciiOutput(String filename, String fontName) {
         this.fontName = fontName;
         this.filename = filename;
+        encodedChars.set(0, encodePage(0));
     }
 
     @Override
     public void output(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                "<!DOCTYPE html>\n"+
-                "<html>\n"+
-                "<body style=\""+
-                    "\tCOLOR:#000000;"+
-                    "\tTEXT-ALIGN:center;"+
-                    "\tFONT-SIZE:1px;\">\n"+
-                "<p style=\""+
-                    "\twhite-space:pre;"+
-                    "\tFONT-FAMILY:%s;"+
-                    "\tFONT-SIZE:%frem;"+
-                    "\tLETTER-SPACING:0.15em;"+
-                    "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
+        long start = Metrics.start();
+        try(RowWriter writer = open(chars[0].length)) {
+            for (char[] row : chars)
+                writer.writeRow(row);
+        } catch(IOException | UncheckedIOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+        Metrics.stop(Metrics.Stage.OUTPUT, start);
+    }
+
+    /*
+        the start of the document, up to the first row of chars.
+     */
+    static String header(String fontName, int numOfCols) {
+        return String.format(
+            "<!DOCTYPE html>\n"+
+            "<html>\n"+
+            "<body style=\""+
+                "\tCOLOR:#000000;"+
+                "\tTEXT-ALIGN:center;"+
+                "\tFONT-SIZE:1px;\">\n"+
+            "<p style=\""+
+                "\twhite-space:pre;"+
+                "\tFONT-FAMILY:%s;"+
+                "\tFONT-SIZE:%frem;"+
+                "\tLETTER-SPACING:0.15em;"+
+                "\tLINE-HEIGHT:%fem;\">\n",
+                fontName, BASE_FONT_SIZE/numOfCols, BASE_LINE_SPACING);
+    }
+
+    /*
+        the representation of a char in the text of an html document.
+     */
+    static String htmlRep(char c) {
+        switch(c) {
+            case '<': return "&lt;";
+            case '>': return "&gt;";
+            case '&': return "&amp;";
+            default:  return String.valueOf(c);
+        }
+    }
+
+    /**
+     * Starts writing the file, for chars that are produced a row at a time.
+     * The rows are written to the file as they are given, and the file is complete once the
+     * returned writer is closed.
+     * @param numOfCols how many chars there are in each row
+     * @return a writer of the rows, which must be closed
+     */
+    public RowWriter open(int numOfCols) throws IOException {
+        return open(FileChannel.open(Path.of(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), numOfCols);
+    }
+
+    /**
+     * Starts writing a document to a channel rather than to the file, such as the body of a response.
+     * @param channel where to write the document, closed with the returned writer
+     * @param numOfCols how many chars there are in each row
+     * @return a writer of the rows, which must be closed
+     */
+    public RowWriter open(WritableByteChannel channel, int numOfCols) throws IOException {
+        return new RowWriter(channel, numOfCols);
+    }
+
+    /**
+     * Writes the rows of chars of a single HTML document. Not safe for use by multiple threads.
+     */
+    public class RowWriter implements Consumer<char[]>, Closeable {
+        private final WritableByteChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
+
+        private RowWriter(WritableByteChannel channel, int numOfCols) throws IOException {
+            this.channel = channel;
+            try {
+                write(header(fontName, numOfCols).getBytes(charset));
+            } catch(IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Writes a row of chars, escaped for HTML, followed by a line break.
+         */
+        public void writeRow(char[] row) throws IOException {
+            buffer.clear();
+            putChars(row, 0, row.length);
+            put(lineSeparator);
+            buffer.flip();
+            writeBuffer();
+        }
+
+        /**
+         * Writes a row of colored chars, escaped for HTML, in a span for every run of chars of the
+         * same color, followed by a line break.
+         * @param colors the packed RGB color of each char
+         */
+        public void writeRow(char[] row, int[] colors) throws IOException {
+            buffer.clear();
+            int x = 0;
+            while (x < row.length) {
+                int color = colors[x] & 0xFFFFFF;
+                int end = x + 1;
+                while (end < row.length && (colors[end] & 0xFFFFFF) == color)
+                    end++;
+                put(encode("<span style=\"color:#" + Integer.toHexString(0x1000000 | color).substring(1) + "\">"));
+                putChars(row, x, end);
+                put(spanEnd);
+                x = end;
+            }
+            put(lineSeparator);
+            buffer.flip();
+            writeBuffer();
+        }
+
+        /**
+         * Same as writeRow, for use as a consumer of rows.
+         * @throws UncheckedIOException if the row can't be written
+         */
+        @Override
+        public void accept(char[] row) {
+            try {
+                writeRow(row);
+            } catch(IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Ends the HTML document and closes the file.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                write(encode(FOOTER));
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            buffer.clear();
+            put(bytes);
+            buffer.flip();
+            writeBuffer();
+        }
+
+        private void putChars(char[] row, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (Character.isHighSurrogate(row[i]) && i + 1 < to &&
+                    Character.isLowSurrogate(row[i + 1])) { // a pair encodes a single code point
+                    put(encode(new String(row, i++, 2)));
+                    continue;
                 }
-                writer.newLine();
+                put(encodedChar(row[i]));
             }
-            writer.write(
-                "</p>\n"+
-                "</body>\n"+
-                "</html>\n");
-        } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
         }
+
+        private void put(byte[] bytes) {
+            if (buffer.remaining() < bytes.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2,
+                        buffer.position() + bytes.length));
+                buffer.flip();
+                buffer = larger.put(buffer);
+            }
+            buffer.put(bytes);
+        }
+
+        private void writeBuffer() throws IOException {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+    }
+
+    private byte[] encodedChar(char c) {
+        byte[][] page = encodedChars.get(c / PAGE_SIZE);
+        if (page == null) { // encoding a page twice in a race is harmless
+            page = encodePage(c / PAGE_SIZE);
+            encodedChars.set(c / PAGE_SIZE, page);
+        }
+        return page[c % PAGE_SIZE];
+    }
+
+    private byte[][] encodePage(int pageIndex) {
+        byte[][] page = new byte[PAGE_SIZE][];
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            page[i] = encode(htmlRep((char) (pageIndex * PAGE_SIZE + i)));
+        }
+        return page;
+    }
+
+    private byte[] encode(String text) {
+        byte[] bytes = text.getBytes(charset);
+        return Arrays.copyOfRange(bytes, byteOrderMarkLength, bytes.length);
     }
 }
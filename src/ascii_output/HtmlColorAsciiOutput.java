@@ -0,0 +1,61 @@
+package ascii_output;
+
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of colored chars to an HTML file viewable in a web browser.
+ * Consecutive chars of the same color in a row share a single span, to keep the file small.
+ * The file is written through the row writer of HtmlAsciiOutput, with its pre-encoded chars.
+ */
+public class HtmlColorAsciiOutput implements ColorAsciiOutput {
+    private final String filename;
+    private final HtmlAsciiOutput html;
+
+    public HtmlColorAsciiOutput(String filename, String fontName) {
+        this.filename = filename;
+        html = new HtmlAsciiOutput(filename, fontName);
+    }
+
+    @Override
+    public void output(char[][] chars, int[][] colors) {
+        long start = Metrics.start();
+        try(HtmlAsciiOutput.RowWriter writer = html.open(chars[0].length)) {
+            writeRows(writer, chars, colors);
+        } catch(IOException | UncheckedIOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+        Metrics.stop(Metrics.Stage.OUTPUT, start);
+    }
+
+    /**
+     * Writes a whole HTML document of chars to a stream, for callers which don't write to a file,
+     * encoded exactly as the files are.
+     * @param out where to write the document. It is closed once the document is written.
+     * @param fontName the font to show the chars in
+     * @param chars the chars to write
+     * @param colors the packed RGB color of each char, or null for black chars
+     */
+    public static void write(OutputStream out, String fontName, char[][] chars, int[][] colors)
+            throws IOException {
+        HtmlAsciiOutput html = new HtmlAsciiOutput(null, fontName);
+        try(HtmlAsciiOutput.RowWriter writer = html.open(Channels.newChannel(out), chars[0].length)) {
+            writeRows(writer, chars, colors);
+        }
+    }
+
+    private static void writeRows(HtmlAsciiOutput.RowWriter writer, char[][] chars, int[][] colors)
+            throws IOException {
+        for (int y = 0; y < chars.length; y++) {
+            if (colors == null)
+                writer.writeRow(chars[y]);
+            else
+                writer.writeRow(chars[y], colors[y]);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package ascii_output;
+
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars as lines of text to a stream or channel.
+ * Each output is encoded into a buffer which is reused between outputs, and written with a single
+ * bulk write, rather than one write per char.
+ */
+public class StreamAsciiOutput implements AsciiOutput {
+    private final WritableByteChannel channel;
+    private final String separator;
+    private final String lineSeparator = System.lineSeparator();
+    private final CharsetEncoder encoder;
+    private CharBuffer text = CharBuffer.allocate(0);
+    private ByteBuffer bytes = ByteBuffer.allocate(0);
+
+    /**
+     * Constructor
+     *
+     * @param out       the stream to write to. It is not closed by this object.
+     * @param separator written after every char, may be empty.
+     */
+    public StreamAsciiOutput(OutputStream out, String separator) {
+        this(Channels.newChannel(out), separator, Charset.defaultCharset());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param channel   the channel to write to. It is not closed by this object.
+     * @param separator written after every char, may be empty.
+     * @param charset   the encoding of the written text.
+     */
+    public StreamAsciiOutput(WritableByteChannel channel, String separator, Charset charset) {
+        this.channel = channel;
+        this.separator = separator;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    @Override
+    public synchronized void output(char[][] chars) {
+        long start = Metrics.start();
+        try {
+            ByteBuffer frame = encode(chars);
+            while (frame.hasRemaining())
+                channel.write(frame);
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write ascii art: " + e.getMessage());
+        }
+        Metrics.stop(Metrics.Stage.OUTPUT, start);
+    }
+
+    /*
+        encoding all the rows into the reused byte buffer, ready to be written.
+     */
+    private ByteBuffer encode(char[][] chars) {
+        int length = 0;
+        for (char[] row : chars)
+            length += row.length * (1 + separator.length()) + lineSeparator.length();
+        if (text.capacity() < length)
+            text = CharBuffer.allocate(length);
+        text.clear();
+        for (char[] row : chars) {
+            if (separator.isEmpty()) {
+                text.put(row);
+            } else {
+                for (char c : row)
+                    text.put(c).put(separator);
+            }
+            text.put(lineSeparator);
+        }
+        text.flip();
+
+        int maxBytes = (int) Math.ceil(length * (double) encoder.maxBytesPerChar());
+        if (bytes.capacity() < maxBytes)
+            bytes = ByteBuffer.allocate(maxBytes);
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(text, bytes, true);
+        encoder.flush(bytes);
+        bytes.flip();
+        return bytes;
+    }
+}
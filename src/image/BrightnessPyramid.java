@@ -0,0 +1,118 @@
+package image;
+
+import metrics.Metrics;
+
+/**
+ * The brightness of an image at a series of resolutions: the sums of the luminance of square tiles whose
+ * size starts at a given number of pixels and doubles from level to level, until a single tile covers
+ * the whole image.
+ * Only the first level is summed from the pixels; every other level sums 2x2 blocks of tiles of the level
+ * below it, so all the levels together take about 4/3 the memory of the first one.
+ */
+public class BrightnessPyramid {
+    private final int width;
+    private final int height;
+    private final int baseTileSize;
+    private final long[][] levels;
+
+    /**
+     * Constructor
+     *
+     * @param img          the image to index.
+     * @param baseTileSize the width and height in pixels of the tiles of the first level.
+     */
+    public BrightnessPyramid(Image img, int baseTileSize) {
+        if (baseTileSize <= 0)
+            throw new IllegalArgumentException("tile size must be positive");
+        long start = Metrics.start();
+        width = img.getWidth();
+        height = img.getHeight();
+        this.baseTileSize = baseTileSize;
+        int numOfLevels = 1;
+        for (long tile = baseTileSize; tile < width || tile < height; tile *= 2)
+            numOfLevels++;
+        levels = new long[numOfLevels][];
+        levels[0] = sumTiles(img);
+        for (int level = 1; level < numOfLevels; level++)
+            levels[level] = sumBlocks(level);
+        Metrics.stop(Metrics.Stage.BRIGHTNESS_INDEXING, start);
+        Metrics.count(Metrics.Counter.PIXELS_INDEXED, (long) width * height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The average grey level, in the range [0,1], of the pixels of a tile. The tiles in the last row and
+     * column may be cut by the edge of the image, and are averaged over the pixels they cover.
+     *
+     * @param tileSize the width and height of the tiles in pixels, one of the sizes of the levels.
+     * @param row      the row of the tile, counted in tiles.
+     * @param col      the column of the tile, counted in tiles.
+     * @throws IllegalArgumentException if no level is made of tiles of this size.
+     */
+    public double averageBrightness(int tileSize, int row, int col) {
+        int level = levelOf(tileSize);
+        if (level < 0)
+            throw new IllegalArgumentException("no level of tiles of size " + tileSize);
+        int cols = tilesIn(width, tileSize);
+        if (row < 0 || col < 0 || row >= tilesIn(height, tileSize) || col >= cols)
+            throw new IndexOutOfBoundsException();
+        return IntegralImage.averageOf(levels[level][row * cols + col],
+                Math.min(tileSize, width - col * tileSize), Math.min(tileSize, height - row * tileSize));
+    }
+
+    private int levelOf(int tileSize) {
+        for (int level = 0, size = baseTileSize; level < levels.length; level++, size *= 2)
+            if (size == tileSize)
+                return level;
+        return -1;
+    }
+
+    /*
+        summing the luminance of the tiles of the first level, a row of pixels at a time.
+     */
+    private long[] sumTiles(Image img) {
+        int cols = tilesIn(width, baseTileSize);
+        long[] tiles = new long[cols * tilesIn(height, baseTileSize)];
+        int[] pixels = new int[width];
+        for (int y = 0; y < height; y++) {
+            img.getRGBRow(0, y, width, pixels, 0);
+            int rowStart = (y / baseTileSize) * cols;
+            LuminanceKernel.fastest().weightedLuminance(pixels, 0, pixels, 0, width);
+            for (int col = 0, x = 0; col < cols; col++) {
+                long sum = 0;
+                for (int end = Math.min(x + baseTileSize, width); x < end; x++)
+                    sum += pixels[x];
+                tiles[rowStart + col] += sum;
+            }
+        }
+        return tiles;
+    }
+
+    /*
+        summing each 2x2 block of tiles of the level below into a tile of the given level. blocks at the
+        edges may have only some of their tiles.
+     */
+    private long[] sumBlocks(int level) {
+        long[] below = levels[level - 1];
+        int belowTileSize = baseTileSize << (level - 1);
+        int belowCols = tilesIn(width, belowTileSize);
+        int belowRows = tilesIn(height, belowTileSize);
+        int cols = tilesIn(width, belowTileSize * 2);
+        long[] tiles = new long[cols * tilesIn(height, belowTileSize * 2)];
+        for (int row = 0; row < belowRows; row++)
+            for (int col = 0; col < belowCols; col++)
+                tiles[(row / 2) * cols + col / 2] += below[row * belowCols + col];
+        return tiles;
+    }
+
+    private static int tilesIn(int length, int tileSize) {
+        return (length + tileSize - 1) / tileSize;
+    }
+}
@@ -0,0 +1,106 @@
+package image;
+
+import metrics.Metrics;
+
+/**
+ * Summed-area tables of the red, green and blue channels of an image, kept apart from the luminance in
+ * IntegralImage so that only colored renders build them.
+ * The sums are kept in ints, wrapping around on overflow: the sum of a rectangle is the difference of
+ * four entries, which is exact modulo 2^32, so it is exact whenever the rectangle's true sum is below
+ * 2^32, that is for rectangles of fewer than 2^32 / 255 pixels. Larger rectangles are summed in parts.
+ * This takes 12 bytes a pixel, half of what tables of longs would.
+ */
+public class ColorIntegralImage {
+    /*
+        the most pixels a rectangle may have for its sum of a channel to fit in an unsigned int.
+     */
+    private static final int MAX_EXACT_PIXELS = (int) (0xFFFF_FFFFL / 255);
+
+    private final int width;
+    private final int height;
+    private final int[] redSums;
+    private final int[] greenSums;
+    private final int[] blueSums;
+
+    /**
+     * Constructor
+     *
+     * @param img the image to index.
+     */
+    public ColorIntegralImage(Image img) {
+        long start = Metrics.start();
+        width = img.getWidth();
+        height = img.getHeight();
+        int size = (width + 1) * (height + 1);
+        redSums = new int[size];
+        greenSums = new int[size];
+        blueSums = new int[size];
+        int stride = width + 1;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            img.getRGBRow(0, y, width, row, 0);
+            int redRowSum = 0, greenRowSum = 0, blueRowSum = 0;
+            int rowStart = (y + 1) * stride;
+            for (int x = 0; x < width; x++) {
+                int argb = row[x];
+                redRowSum += (argb >> 16) & 0xFF;
+                greenRowSum += (argb >> 8) & 0xFF;
+                blueRowSum += argb & 0xFF;
+                int i = rowStart + x + 1;
+                redSums[i] = redSums[i - stride] + redRowSum;
+                greenSums[i] = greenSums[i - stride] + greenRowSum;
+                blueSums[i] = blueSums[i - stride] + blueRowSum;
+            }
+        }
+        Metrics.stop(Metrics.Stage.COLOR_INDEXING, start);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The average color of the pixels in a rectangle of the image.
+     *
+     * @param x      the left column of the rectangle.
+     * @param y      the top row of the rectangle.
+     * @param width  the width of the rectangle in pixels.
+     * @param height the height of the rectangle in pixels.
+     * @return the average color as packed RGB, each channel rounded to the nearest integer.
+     */
+    public int averageColor(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width <= 0 || height <= 0 || x + width > this.width || y + height > this.height)
+            throw new IndexOutOfBoundsException();
+        long numOfPixels = (long) width * height;
+        long half = numOfPixels / 2;
+        int red = (int) ((sum(redSums, x, y, width, height) + half) / numOfPixels);
+        int green = (int) ((sum(greenSums, x, y, width, height) + half) / numOfPixels);
+        int blue = (int) ((sum(blueSums, x, y, width, height) + half) / numOfPixels);
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    /*
+        the sum of a channel over a rectangle, split to parts of at most MAX_EXACT_PIXELS pixels each.
+     */
+    private long sum(int[] table, int x, int y, int width, int height) {
+        int partWidth = Math.min(width, MAX_EXACT_PIXELS);
+        int partHeight = Math.max(1, Math.min(height, MAX_EXACT_PIXELS / partWidth));
+        long sum = 0;
+        for (int top = y; top < y + height; top += partHeight)
+            for (int left = x; left < x + width; left += partWidth)
+                sum += exactSum(table, left, top,
+                        Math.min(partWidth, x + width - left), Math.min(partHeight, y + height - top));
+        return sum;
+    }
+
+    private long exactSum(int[] table, int x, int y, int width, int height) {
+        int stride = this.width + 1;
+        int top = y * stride, bottom = (y + height) * stride;
+        return Integer.toUnsignedLong(
+                table[bottom + x + width] - table[bottom + x] - table[top + x + width] + table[top + x]);
+    }
+}
@@ -0,0 +1,194 @@
+package image;
+
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+
+/**
+ * The frames of an animation, decoded one at a time: either the frames of an animated GIF,
+ * or a directory of numbered image files, ordered by the numbers in their names.
+ */
+public abstract class FrameSequence implements AutoCloseable {
+    private static final String GIF_SUFFIX = ".gif";
+
+    /**
+     * Open an animation.
+     *
+     * @param path a GIF file, or a directory holding one image file per frame.
+     * @return the opened animation, to be closed by the caller
+     * @throws IOException if the animation can't be opened
+     */
+    public static FrameSequence open(String path) throws IOException {
+        File file = new File(path);
+        if (file.isDirectory())
+            return new NumberedFrames(file);
+        if (path.toLowerCase().endsWith(GIF_SUFFIX))
+            return new GifFrames(file);
+        throw new IOException("Not a GIF file or a directory of frames: " + path);
+    }
+
+    /**
+     * Decodes the next frame.
+     *
+     * @return the next frame, or null if there are no more frames.
+     */
+    public abstract Image nextFrame() throws IOException;
+
+    @Override
+    public void close() throws IOException {
+    }
+
+    /*
+        a directory of image files, one per frame.
+     */
+    private static class NumberedFrames extends FrameSequence {
+        private final File[] files;
+        private int next = 0;
+
+        NumberedFrames(File directory) throws IOException {
+            File[] files = directory.listFiles(File::isFile);
+            if (files == null)
+                throw new IOException("Can't list " + directory);
+            // "frame10" comes after "frame9": shorter names first, then in order
+            Arrays.sort(files, Comparator.comparingInt((File f) -> f.getName().length())
+                    .thenComparing(File::getName));
+            this.files = files;
+        }
+
+        @Override
+        public Image nextFrame() throws IOException {
+            while (next < files.length) {
+                BufferedImage frame = ImageIO.read(files[next++]);
+                if (frame != null) // skip files which aren't images
+                    return PackedImage.of(frame);
+            }
+            return null;
+        }
+    }
+
+    /*
+        the frames of an animated GIF, each drawn over what the previous frames left on the screen.
+     */
+    private static class GifFrames extends FrameSequence {
+        private static final String DISPOSE_TO_BACKGROUND = "restoreToBackgroundColor";
+        private static final String DISPOSE_TO_PREVIOUS = "restoreToPrevious";
+
+        private final ImageInputStream input;
+        private final ImageReader reader;
+        private BufferedImage screen;
+        private int next = 0;
+
+        GifFrames(File file) throws IOException {
+            input = ImageIO.createImageInputStream(file);
+            if (input == null)
+                throw new IOException("Can't open " + file);
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                input.close();
+                throw new IOException("Unsupported image format " + file);
+            }
+            reader = readers.next();
+            reader.setInput(input, false, false);
+        }
+
+        @Override
+        public Image nextFrame() throws IOException {
+            BufferedImage frame;
+            try {
+                frame = reader.read(next);
+            } catch (IndexOutOfBoundsException e) {
+                return null;
+            }
+            IIOMetadata metadata = reader.getImageMetadata(next);
+            Node descriptor = child(metadata, "ImageDescriptor");
+            Node control = child(metadata, "GraphicControlExtension");
+            next++;
+            int x = intAttribute(descriptor, "imageLeftPosition");
+            int y = intAttribute(descriptor, "imageTopPosition");
+            if (screen == null)
+                screen = blankScreen(Math.max(screenWidth(), x + frame.getWidth()),
+                        Math.max(screenHeight(), y + frame.getHeight()));
+
+            String disposal = control == null ? "" : attribute(control, "disposalMethod");
+            BufferedImage previous = disposal.equals(DISPOSE_TO_PREVIOUS) ? copy(screen) : null;
+            Graphics2D graphics = screen.createGraphics();
+            graphics.drawImage(frame, x, y, null);
+            graphics.dispose();
+            Image shown = PackedImage.of(screen);
+
+            if (disposal.equals(DISPOSE_TO_BACKGROUND)) {
+                graphics = screen.createGraphics();
+                graphics.setColor(Color.WHITE);
+                graphics.fillRect(x, y, frame.getWidth(), frame.getHeight());
+                graphics.dispose();
+            } else if (previous != null) {
+                screen = previous;
+            }
+            return shown;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.dispose();
+            input.close();
+        }
+
+        private int screenWidth() throws IOException {
+            return intAttribute(child(reader.getStreamMetadata(), "LogicalScreenDescriptor"), "logicalScreenWidth");
+        }
+
+        private int screenHeight() throws IOException {
+            return intAttribute(child(reader.getStreamMetadata(), "LogicalScreenDescriptor"), "logicalScreenHeight");
+        }
+
+        private static BufferedImage blankScreen(int width, int height) {
+            BufferedImage screen = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = screen.createGraphics();
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.dispose();
+            return screen;
+        }
+
+        private static BufferedImage copy(BufferedImage img) {
+            BufferedImage copy = new BufferedImage(img.getWidth(), img.getHeight(), img.getType());
+            Graphics2D graphics = copy.createGraphics();
+            graphics.drawImage(img, 0, 0, null);
+            graphics.dispose();
+            return copy;
+        }
+
+        /*
+            the first node of the given name in the native metadata tree, or null.
+         */
+        private static Node child(IIOMetadata metadata, String name) {
+            if (metadata == null)
+                return null;
+            Node root = metadata.getAsTree(metadata.getNativeMetadataFormatName());
+            for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling())
+                if (node.getNodeName().equals(name))
+                    return node;
+            return null;
+        }
+
+        private static String attribute(Node node, String name) {
+            Node attribute = node == null ? null : node.getAttributes().getNamedItem(name);
+            return attribute == null ? "" : attribute.getNodeValue();
+        }
+
+        private static int intAttribute(Node node, String name) {
+            String value = attribute(node, name);
+            return value.isEmpty() ? 0 : Integer.parseInt(value);
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package image;
 
+import metrics.Metrics;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * Facade for the image module and an interface representing an image.
@@ -13,20 +21,84 @@ public interface Image {
     int getHeight();
 
     /**
-     * Open an image from file. Each dimensions of the returned image is guaranteed
-     * to be a power of 2, but the dimensions may be different.
+     * The packed ARGB value of a pixel. Images backed by primitive storage override this
+     * so that reading a pixel does not allocate a Color.
+     */
+    default int getRGB(int x, int y) {
+        return getPixel(x, y).getRGB();
+    }
+
+    /**
+     * Copies the packed ARGB values of consecutive pixels in a row into an array,
+     * the bulk counterpart of getRGB.
+     * @param x the column of the first pixel to copy
+     * @param y the row of the pixels
+     * @param length how many pixels to copy
+     * @param dest the array to copy into
+     * @param offset the index in dest of the first pixel
+     */
+    default void getRGBRow(int x, int y, int length, int[] dest, int offset) {
+        for (int i = 0; i < length; i++)
+            dest[offset + i] = getRGB(x + i, y);
+    }
+
+    /**
+     * Open an image from file. The returned image has the dimensions of the image in the file.
+     * When the system property {@code ascii_art.imageCache} names a directory, the decoded pixels are
+     * cached there, and later opens of the same unchanged file map them instead of decoding the file.
      * @param filename a path to an image file on disk
      * @return an object implementing Image if the operation was successful,
      * null otherwise
      */
     static Image fromFile(String filename) {
         try {
-            return new FileImage(filename);
+            return MappedImage.open(filename);
         } catch(IOException ioe) {
             return null;
         }
     }
 
+    /**
+     * Decode an image from the contents of an image file, such as an upload.
+     * @param data the bytes of an image file in any format ImageIO can read
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image fromBytes(byte[] data) {
+        try {
+            long start = Metrics.start();
+            BufferedImage im = ImageIO.read(new ByteArrayInputStream(data));
+            Metrics.stop(Metrics.Stage.IMAGE_READ, start);
+            return im == null ? null : PackedImage.of(im);
+        } catch(IOException ioe) {
+            return null;
+        }
+    }
+
+    /**
+     * Read the dimensions of an image from the header of an image file, without decoding its pixels,
+     * so that images too large to decode can be turned away first.
+     * @param data the bytes of an image file in any format ImageIO can read
+     * @return the width and height of the image if the operation was successful,
+     * null otherwise
+     */
+    static Dimension dimensionsOf(byte[] data) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext())
+                return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch(IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
     /**
      * Allows iterating the pixels' colors by order (first row, second row and so on).
      * @return an Iterable<Color> that can be traversed with a foreach loop
@@ -36,15 +108,39 @@ public interface Image {
                 this, this::getPixel,1,1);
     }
 
+    /**
+     * Visits the bounds of the square sub-images squareSubImagesOfSize would return, in the same
+     * order, without creating an image for each of them.
+     * @param pixels the width and height, in pixels, of each square sub-image
+     * @param visitor called once for every sub-image
+     */
+    default void forEachSquareSubImage(int pixels, SubImageVisitor visitor) {
+        for (int y = 0; y < getHeight(); y += pixels)
+            for (int x = 0; x < getWidth(); x += pixels)
+                visitor.visit(x, y, Math.min(pixels, getWidth()-x), Math.min(pixels, getHeight()-y));
+    }
+
+    /**
+     * Receives the bounds of the sub-images visited by forEachSquareSubImage.
+     */
+    @FunctionalInterface
+    interface SubImageVisitor {
+        void visit(int x, int y, int width, int height);
+    }
+
     /**
      * Breaks the image down to square sub-images of a specified width/height in pixels.
+     * If the dimensions of the image are not multiples of pixels, the sub-images at the right
+     * and bottom edges are cut at the edge of the image.
      * @param pixels the width and height, in pixels, of each square sub-image
      * @return an Iterable of the sub-images
      */
     default Iterable<Image> squareSubImagesOfSize(int pixels) {
         return new ImageIterableProperty<>(
                 this,
-                (x,y)->new ImageView(this,x,y,pixels,pixels),
+                (x,y)->new ImageView(this,x,y,
+                        Math.min(pixels, getWidth()-x),
+                        Math.min(pixels, getHeight()-y)),
                 pixels,
                 pixels);
     }
@@ -2,7 +2,6 @@ package image;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.function.BiFunction;
 
 /**
  * A package-private class of the package image.
@@ -10,13 +9,13 @@ import java.util.function.BiFunction;
  */
 class ImageIterableProperty<T> implements Iterable<T> {
     private final Image img;
-    private final BiFunction<Integer, Integer, T> propertySupplier;
+    private final PropertySupplier<T> propertySupplier;
     private final int xIncrement;
     private final int yIncrement;
 
     public ImageIterableProperty(
             Image img,
-            BiFunction<Integer, Integer, T> propertySupplier,
+            PropertySupplier<T> propertySupplier,
             int xIncrement,
             int yIncrement) {
         this.img = img;
@@ -49,4 +48,12 @@ class ImageIterableProperty<T> implements Iterable<T> {
             }
         };
     }
+
+    /*
+        the property of the image at given coordinates, taking them unboxed.
+     */
+    @FunctionalInterface
+    interface PropertySupplier<T> {
+        T apply(int x, int y);
+    }
 }
@@ -0,0 +1,136 @@
+package image;
+
+import metrics.Metrics;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * An image file that is decoded one horizontal strip at a time, for images too large to hold in memory.
+ * Strips are not padded, and a strip which crosses the bottom of the image is cut at it.
+ * For most formats the decoder has to scan past all the rows above a region on every read, so reading
+ * strip after strip would decode the top of the image again for each of them. Instead, the rows are
+ * decoded in bands of many strips, at most BAND_PIXELS pixels each, which the strips are then copied out
+ * of: reading the strips in order from the top decodes the file only about once per band.
+ */
+public class ImageStrips implements AutoCloseable {
+    /*
+        the most pixels of a band, 64MB of them, unless a single strip is larger.
+     */
+    private static final int BAND_PIXELS = 1 << 24;
+
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int width;
+    private final int height;
+    private PackedImage band;
+    private int bandTop;
+
+    private ImageStrips(ImageInputStream input, ImageReader reader) throws IOException {
+        this.input = input;
+        this.reader = reader;
+        reader.setInput(input, true, true);
+        width = reader.getWidth(0);
+        height = reader.getHeight(0);
+    }
+
+    /**
+     * Open an image file for reading in strips.
+     *
+     * @param filename a path to an image file on disk
+     * @return the opened image, to be closed by the caller
+     * @throws IOException if the file can't be read or isn't in a supported format
+     */
+    public static ImageStrips open(String filename) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(new File(filename));
+        if (input == null)
+            throw new IOException("Can't open " + filename);
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("Unsupported image format " + filename);
+        }
+        try {
+            return new ImageStrips(input, readers.next());
+        } catch (IOException | RuntimeException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the width, in pixels, of the image in the file.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height, in pixels, of the image in the file.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Decodes a strip of full rows of the image. Strips below the last strip read are the cheapest to read.
+     *
+     * @param y         the top row of the strip.
+     * @param numOfRows how many rows to read; cut at the bottom of the image.
+     * @return the strip as an image of its own, whose row 0 is row y of the file.
+     */
+    public Image readStrip(int y, int numOfRows) throws IOException {
+        if (y < 0 || y >= height || numOfRows <= 0)
+            throw new IllegalArgumentException();
+        int rows = Math.min(numOfRows, height - y);
+        if (band == null || y < bandTop || y + rows > bandTop + band.getHeight())
+            readBand(y, rows);
+        int from = (y - bandTop) * width;
+        return new PackedImage(Arrays.copyOfRange(band.argb, from, from + rows * width), width, rows);
+    }
+
+    /**
+     * Decodes the whole image at once, for images small enough to hold in memory, with the reader the
+     * strips are read with, so the file is opened and decoded only once.
+     *
+     * @return the image.
+     */
+    public Image readAll() throws IOException {
+        band = null;
+        long start = Metrics.start();
+        BufferedImage im = reader.read(0);
+        Metrics.stop(Metrics.Stage.IMAGE_READ, start);
+        return PackedImage.of(im);
+    }
+
+    /*
+        decoding the band of rows that starts at row y, of as many rows as fit in BAND_PIXELS, but at least
+        the given number of rows. the previous band is dropped first, so both are never held at once.
+     */
+    private void readBand(int y, int minRows) throws IOException {
+        band = null;
+        int rows = Math.min(Math.max(minRows, BAND_PIXELS / width), height - y);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, y, width, rows));
+        long start = Metrics.start();
+        BufferedImage im = reader.read(0, param);
+        Metrics.stop(Metrics.Stage.IMAGE_READ, start);
+        band = PackedImage.of(im);
+        bandTop = y;
+    }
+
+    @Override
+    public void close() throws IOException {
+        band = null;
+        reader.dispose();
+        input.close();
+    }
+}
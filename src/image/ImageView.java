@@ -48,6 +48,20 @@ class ImageView implements Image {
         return img.getPixel(startX+x, startY+y);
     }
 
+    @Override
+    public int getRGB(int x, int y) {
+        if(x < 0 || y < 0 || x >= getWidth() || y >= getHeight())
+            throw new IndexOutOfBoundsException();
+        return img.getRGB(startX+x, startY+y);
+    }
+
+    @Override
+    public void getRGBRow(int x, int y, int length, int[] dest, int offset) {
+        if(x < 0 || y < 0 || length < 0 || x+length > getWidth() || y >= getHeight())
+            throw new IndexOutOfBoundsException();
+        img.getRGBRow(startX+x, startY+y, length, dest, offset);
+    }
+
     @Override
     public int getWidth() {
         return width;
@@ -0,0 +1,87 @@
+package image;
+
+import metrics.Metrics;
+
+/**
+ * A summed-area table of the luminance of an image.
+ * Built once in a single pass over the pixels, after which the average brightness of any rectangle of
+ * the image is given by four lookups, regardless of the rectangle's size. The color channels are indexed
+ * by ColorIntegralImage.
+ */
+public class IntegralImage {
+    /*
+        luminance is kept as an exact integer: 255 * 10000 times the grey level of a pixel,
+        so the sums never lose precision no matter how large the image is.
+     */
+    private static final double MAX_PIXEL_VALUE = 255.0 *
+            (LuminanceKernel.RED_WEIGHT + LuminanceKernel.GREEN_WEIGHT + LuminanceKernel.BLUE_WEIGHT);
+
+    private final int width;
+    private final int height;
+    private final long[] sums;
+
+    /**
+     * Constructor
+     *
+     * @param img the image to index.
+     */
+    public IntegralImage(Image img) {
+        long start = Metrics.start();
+        width = img.getWidth();
+        height = img.getHeight();
+        sums = new long[(width + 1) * (height + 1)];
+        int stride = width + 1;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            img.getRGBRow(0, y, width, row, 0);
+            LuminanceKernel.fastest().weightedLuminance(row, 0, row, 0, width);
+            long rowSum = 0;
+            int rowStart = (y + 1) * stride;
+            for (int x = 0; x < width; x++) {
+                rowSum += row[x];
+                sums[rowStart + x + 1] = sums[rowStart - stride + x + 1] + rowSum;
+            }
+        }
+        Metrics.stop(Metrics.Stage.BRIGHTNESS_INDEXING, start);
+        Metrics.count(Metrics.Counter.PIXELS_INDEXED, (long) width * height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The average grey level, in the range [0,1], of the pixels in a rectangle of the image.
+     *
+     * @param x      the left column of the rectangle.
+     * @param y      the top row of the rectangle.
+     * @param width  the width of the rectangle in pixels.
+     * @param height the height of the rectangle in pixels.
+     */
+    public double averageBrightness(int x, int y, int width, int height) {
+        checkBounds(x, y, width, height);
+        return averageOf(sum(sums, x, y, width, height), width, height);
+    }
+
+    private void checkBounds(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width <= 0 || height <= 0 || x + width > this.width || y + height > this.height)
+            throw new IndexOutOfBoundsException();
+    }
+
+    private long sum(long[] table, int x, int y, int width, int height) {
+        int stride = this.width + 1;
+        int top = y * stride, bottom = (y + height) * stride;
+        return table[bottom + x + width] - table[bottom + x] - table[top + x + width] + table[top + x];
+    }
+
+    /*
+        the average grey level of a rectangle of the given size, given the sum of its weighted luminance.
+     */
+    static double averageOf(long luminanceSum, int width, int height) {
+        return luminanceSum / (MAX_PIXEL_VALUE * width * height);
+    }
+}
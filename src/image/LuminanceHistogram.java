@@ -0,0 +1,123 @@
+package image;
+
+/**
+ * The histograms of the grey levels of the pixels of an image, one for each tile of a grid laid over the
+ * image, from which the histogram of the whole image is summed.
+ * The pixels are counted a band of rows at a time, so several threads can count different bands at once:
+ * each band is counted into counts of its own, which are added to the shared counts once the band is done.
+ */
+public class LuminanceHistogram {
+    /**
+     * The number of grey levels, and so of bins in each histogram.
+     */
+    public static final int LEVELS = 256;
+    /*
+        the weighted luminance of a pixel is 255 * 10000 times its grey level.
+     */
+    private static final int LUMINANCE_PER_LEVEL =
+            LuminanceKernel.RED_WEIGHT + LuminanceKernel.GREEN_WEIGHT + LuminanceKernel.BLUE_WEIGHT;
+
+    private final int width;
+    private final int height;
+    private final int tilesAcross;
+    private final int tilesDown;
+    private final long[] counts;
+
+    /**
+     * Constructor. The histograms start empty, and are filled by addRows.
+     *
+     * @param width       the width of the image in pixels.
+     * @param height      the height of the image in pixels.
+     * @param tilesAcross the number of columns of tiles, at most the width.
+     * @param tilesDown   the number of rows of tiles, at most the height.
+     */
+    public LuminanceHistogram(int width, int height, int tilesAcross, int tilesDown) {
+        if (tilesAcross <= 0 || tilesDown <= 0 || tilesAcross > width || tilesDown > height)
+            throw new IllegalArgumentException("bad grid of tiles");
+        this.width = width;
+        this.height = height;
+        this.tilesAcross = tilesAcross;
+        this.tilesDown = tilesDown;
+        counts = new long[tilesAcross * tilesDown * LEVELS];
+    }
+
+    /**
+     * Counts the pixels of a band of rows of the image. Bands counted by different threads at once must
+     * not overlap, and every row must be counted once.
+     *
+     * @param img     the image, of the dimensions given to the constructor.
+     * @param fromRow the first row of the band.
+     * @param toRow   the row after the last row of the band.
+     */
+    public void addRows(Image img, int fromRow, int toRow) {
+        int[] tileOfColumn = new int[width];
+        for (int x = 0; x < width; x++)
+            tileOfColumn[x] = (int) ((long) x * tilesAcross / width) * LEVELS;
+        int firstTileRow = tileRowOf(fromRow);
+        int[] local = new int[(tileRowOf(toRow - 1) - firstTileRow + 1) * tilesAcross * LEVELS];
+        int[] pixels = new int[width];
+        for (int y = fromRow; y < toRow; y++) {
+            img.getRGBRow(0, y, width, pixels, 0);
+            LuminanceKernel.fastest().weightedLuminance(pixels, 0, pixels, 0, width);
+            int rowStart = (tileRowOf(y) - firstTileRow) * tilesAcross * LEVELS;
+            for (int x = 0; x < width; x++)
+                local[rowStart + tileOfColumn[x] + pixels[x] / LUMINANCE_PER_LEVEL]++;
+        }
+        int offset = firstTileRow * tilesAcross * LEVELS;
+        synchronized (counts) {
+            for (int i = 0; i < local.length; i++)
+                counts[offset + i] += local[i];
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getTilesAcross() {
+        return tilesAcross;
+    }
+
+    public int getTilesDown() {
+        return tilesDown;
+    }
+
+    /**
+     * @param tileRow the row of the tile, counted in tiles.
+     * @param tileCol the column of the tile, counted in tiles.
+     * @return how many pixels of the tile are of each grey level.
+     */
+    public long[] tileCounts(int tileRow, int tileCol) {
+        if (tileRow < 0 || tileCol < 0 || tileRow >= tilesDown || tileCol >= tilesAcross)
+            throw new IndexOutOfBoundsException();
+        long[] tile = new long[LEVELS];
+        synchronized (counts) {
+            System.arraycopy(counts, (tileRow * tilesAcross + tileCol) * LEVELS, tile, 0, LEVELS);
+        }
+        return tile;
+    }
+
+    /**
+     * @return how many pixels of the whole image are of each grey level.
+     */
+    public long[] totalCounts() {
+        long[] total = new long[LEVELS];
+        synchronized (counts) {
+            for (int i = 0; i < counts.length; i++)
+                total[i % LEVELS] += counts[i];
+        }
+        return total;
+    }
+
+    /*
+        the row of tiles of a row of pixels. the tiles split the image as evenly as possible, so their sizes
+        differ by a pixel at most.
+     */
+    private int tileRowOf(int y) {
+        return (int) ((long) y * tilesDown / height);
+    }
+}
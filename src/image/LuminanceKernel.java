@@ -0,0 +1,49 @@
+package image;
+
+/**
+ * Computes the weighted luminance of runs of packed ARGB pixels, the inner loop of indexing the
+ * brightness of an image.
+ * The luminance of a pixel is kept as an exact integer, 255 * 10000 times its grey level, weighing red,
+ * green and blue by 2126, 7152 and 722.
+ * <p>
+ * {@link #fastest()} uses the SIMD instructions of the CPU through the JDK's incubating Vector API when
+ * the JVM runs with {@code --add-modules jdk.incubator.vector} and the vector kernel was built, and plain
+ * Java code otherwise.
+ */
+public interface LuminanceKernel {
+    int RED_WEIGHT = 2126;
+    int GREEN_WEIGHT = 7152;
+    int BLUE_WEIGHT = 722;
+
+    /**
+     * Writes the weighted luminance of consecutive pixels.
+     *
+     * @param argb       the packed ARGB pixels.
+     * @param offset     the index of the first pixel in argb.
+     * @param dest       the array to write the luminance to. May be argb itself, to convert in place.
+     * @param destOffset the index in dest to write the luminance of the first pixel to.
+     * @param length     how many pixels to convert.
+     */
+    void weightedLuminance(int[] argb, int offset, int[] dest, int destOffset, int length);
+
+    /**
+     * @return the plain Java kernel, which works on every JVM.
+     */
+    static LuminanceKernel scalar() {
+        return LuminanceKernels.SCALAR;
+    }
+
+    /**
+     * @return the fastest kernel the JVM supports.
+     */
+    static LuminanceKernel fastest() {
+        return LuminanceKernels.FASTEST;
+    }
+
+    /**
+     * The weighted luminance of a single packed ARGB pixel.
+     */
+    static int weightedLuminance(int argb) {
+        return ((argb >> 16) & 0xFF) * RED_WEIGHT + ((argb >> 8) & 0xFF) * GREEN_WEIGHT + (argb & 0xFF) * BLUE_WEIGHT;
+    }
+}
@@ -0,0 +1,31 @@
+package image;
+
+/**
+ * A package-private class of the package image.
+ * The luminance kernels, chosen once. The vector kernel is only loaded by name, so that without the
+ * incubator module the JVM never links against it, and falls back to the scalar kernel instead. The same
+ * holds when the vector kernel was not compiled at all, since it lives in the separate source root
+ * src-vector, which builds without the module leave out.
+ */
+class LuminanceKernels {
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "image.VectorLuminanceKernel";
+    static final LuminanceKernel SCALAR = (argb, offset, dest, destOffset, length) -> {
+        for (int i = 0; i < length; i++)
+            dest[destOffset + i] = LuminanceKernel.weightedLuminance(argb[offset + i]);
+    };
+    static final LuminanceKernel FASTEST = loadVectorKernel();
+
+    private LuminanceKernels() {
+    }
+
+    private static LuminanceKernel loadVectorKernel() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty())
+            return SCALAR;
+        try {
+            return (LuminanceKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+}
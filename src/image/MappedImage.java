@@ -0,0 +1,192 @@
+package image;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.logging.Logger;
+
+/**
+ * A package-private class of the package image.
+ * An image whose pixels are read from a memory-mapped file of decoded pixels, rather than from the heap.
+ * The files are kept in a cache directory, one per image file, and are valid as long as the image file
+ * has the same modification time and size as when it was decoded. Opening an image whose decoded pixels
+ * are cached only maps the file, so it takes no decoding and no heap for the pixels; the operating
+ * system pages the pixels in as they are read, and shares them between processes.
+ */
+class MappedImage implements Image {
+    /*
+        when set, images are opened through the cache of decoded images in this directory.
+     */
+    static final String CACHE_DIRECTORY_PROPERTY = "ascii_art.imageCache";
+    private static final int FILE_MAGIC = 0x41_52_47_42; // "ARGB"
+    private static final int FILE_VERSION = 1;
+    /*
+        magic, version, byte order, modification time, size, width and height of the image file.
+     */
+    private static final int HEADER_BYTES = 4 + 4 + 4 + 8 + 8 + 4 + 4;
+    /*
+        the pixels are written through a buffer of this many bytes.
+     */
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    private final IntBuffer argb;
+    private final int width;
+    private final int height;
+
+    private MappedImage(IntBuffer argb, int width, int height) {
+        this.argb = argb;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Opens an image through the cache directory named by the system property, or decodes it if the
+     * property isn't set.
+     */
+    static Image open(String filename) throws IOException {
+        String cacheDirectory = System.getProperty(CACHE_DIRECTORY_PROPERTY);
+        if (cacheDirectory == null)
+            return new FileImage(filename);
+        return open(Path.of(filename), Path.of(cacheDirectory));
+    }
+
+    /**
+     * Maps the cached pixels of an image file, decoding the file and caching its pixels first if they
+     * aren't cached or are out of date.
+     *
+     * @param imageFile      the image file.
+     * @param cacheDirectory the directory of the cached pixels, created if missing.
+     * @return the image, mapped if its pixels could be cached.
+     */
+    static Image open(Path imageFile, Path cacheDirectory) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(imageFile, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        Path cached = cacheDirectory.resolve(cacheName(imageFile));
+        MappedImage mapped = map(cached, modified, attributes.size());
+        if (mapped != null)
+            return mapped;
+
+        FileImage decoded = new FileImage(imageFile.toString());
+        try {
+            Files.createDirectories(cacheDirectory);
+            write(cached, decoded, modified, attributes.size());
+        } catch (IOException e) { // the image is still usable, just not cached
+            Logger.getGlobal().warning("Failed to cache " + imageFile + ": " + e.getMessage());
+        }
+        return decoded;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getRGB(x, y), true);
+    }
+
+    @Override
+    public int getRGB(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException();
+        return argb.get(y * width + x);
+    }
+
+    @Override
+    public void getRGBRow(int x, int y, int length, int[] dest, int offset) {
+        if (x < 0 || y < 0 || length < 0 || x + length > width || y >= height)
+            throw new IndexOutOfBoundsException();
+        argb.get(y * width + x, dest, offset, length);
+    }
+
+    /*
+        mapping a cache file, if it exists and was made from an image file of the given modification time
+        and size. returns null otherwise.
+     */
+    private static MappedImage map(Path cached, long modified, long size) {
+        if (!Files.isRegularFile(cached))
+            return null;
+        try (FileChannel channel = FileChannel.open(cached, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES)
+                return null;
+            MappedByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (file.getInt() != FILE_MAGIC || file.getInt() != FILE_VERSION ||
+                file.getInt() != byteOrderMark() || file.getLong() != modified || file.getLong() != size)
+                return null;
+            int width = file.getInt();
+            int height = file.getInt();
+            if (width <= 0 || height <= 0 || channel.size() != HEADER_BYTES + 4L * width * height)
+                return null;
+            // the mapping stays valid after the channel is closed
+            return new MappedImage(file.order(ByteOrder.nativeOrder()).asIntBuffer(), width, height);
+        } catch (IOException e) { // decoding the image again replaces the file
+            return null;
+        }
+    }
+
+    /*
+        writing the pixels of a decoded image to a cache file, through a temporary file, so that a
+        process that maps the cache file never sees it half written. the pixels are copied through a
+        buffer of a fixed size, rather than a copy of the whole image.
+     */
+    private static void write(Path cached, PackedImage img, long modified, long size) throws IOException {
+        long pixels = (long) img.getWidth() * img.getHeight();
+        if (HEADER_BYTES + 4 * pixels > Integer.MAX_VALUE)
+            throw new IOException("Image is too large to map");
+        Path temporary = Files.createTempFile(cached.getParent(), cached.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+            buffer.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(byteOrderMark())
+                    .putLong(modified).putLong(size).putInt(img.getWidth()).putInt(img.getHeight());
+            writeFully(channel, buffer.flip());
+            IntBuffer ints = buffer.clear().order(ByteOrder.nativeOrder()).asIntBuffer();
+            for (int from = 0; from < pixels; from += ints.capacity()) {
+                int count = (int) Math.min(ints.capacity(), pixels - from);
+                ints.clear().put(img.argb, from, count);
+                writeFully(channel, buffer.clear().limit(4 * count));
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    /*
+        the pixels are stored in the byte order of the machine that decoded them, so a file written on
+        a machine of the other byte order is treated as out of date.
+     */
+    private static int byteOrderMark() {
+        return ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 1 : 0;
+    }
+
+    private static String cacheName(Path imageFile) throws IOException {
+        try {
+            byte[] path = imageFile.toRealPath().toString().getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(path)) + ".argb";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JRE has SHA-256
+        }
+    }
+}
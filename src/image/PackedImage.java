@@ -0,0 +1,84 @@
+package image;
+
+import metrics.Metrics;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * A package-private class of the package image.
+ * Stores the pixels of an image as packed ARGB ints in a single row-major array,
+ * so an image costs 4 bytes per pixel instead of one Color object per pixel.
+ */
+class PackedImage implements Image {
+    private static final int OPAQUE = 0xFF000000;
+
+    protected final int[] argb;
+    private final int width;
+    private final int height;
+
+    public PackedImage(int[] argb, int width, int height) {
+        if (width <= 0 || height <= 0 || argb.length < width * height)
+            throw new IllegalArgumentException();
+        this.argb = argb;
+        this.width = width;
+        this.height = height;
+    }
+
+    protected PackedImage(int width, int height) {
+        this(new int[width * height], width, height);
+    }
+
+    /**
+     * Copies a decoded image, row by row, dropping its alpha channel.
+     */
+    static PackedImage of(BufferedImage im) {
+        PackedImage packed = new PackedImage(im.getWidth(), im.getHeight());
+        packed.copyRows(im, 0, 0);
+        return packed;
+    }
+
+    /*
+        copying all the rows of a decoded image into this image, with its top left corner at (x, y).
+     */
+    protected void copyRows(BufferedImage im, int x, int y) {
+        long start = Metrics.start();
+        int rowLength = im.getWidth();
+        for (int row = 0; row < im.getHeight(); row++) {
+            int offset = (y + row) * width + x;
+            im.getRGB(0, row, rowLength, 1, argb, offset, rowLength);
+            for (int i = offset; i < offset + rowLength; i++)
+                argb[i] |= OPAQUE;
+        }
+        Metrics.stop(Metrics.Stage.PIXEL_COPY, start);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getRGB(x, y), true);
+    }
+
+    @Override
+    public int getRGB(int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height)
+            throw new IndexOutOfBoundsException();
+        return argb[y * width + x];
+    }
+
+    @Override
+    public void getRGBRow(int x, int y, int length, int[] dest, int offset) {
+        if (x < 0 || y < 0 || length < 0 || x + length > width || y >= height)
+            throw new IndexOutOfBoundsException();
+        System.arraycopy(argb, y * width + x, dest, offset, length);
+    }
+}
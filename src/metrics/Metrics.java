@@ -0,0 +1,181 @@
+package metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timers of the stages of rendering, and counters of the work done and of cache hits.
+ * Disabled by default, in which case every call costs a single read of a flag. Enable with the
+ * system property {@code ascii_art.metrics=true}, or at runtime with setEnabled.
+ * <p>
+ * Timing a stage:
+ * <pre>
+ *     long start = Metrics.start();
+ *     ... the stage ...
+ *     Metrics.stop(Metrics.Stage.OUTPUT, start);
+ * </pre>
+ */
+public final class Metrics {
+    private static final String ENABLED_PROPERTY = "ascii_art.metrics";
+
+    /**
+     * The timed stages of rendering.
+     */
+    public enum Stage {
+        IMAGE_READ("image read"),
+        PIXEL_COPY("pixel copy"),
+        GLYPH_RENDERING("glyph rendering"),
+        BRIGHTNESS_INDEXING("brightness indexing"),
+        COLOR_INDEXING("color indexing"),
+        BRIGHTNESS_AVERAGING("brightness averaging"),
+        CONTRAST_EQUALIZATION("contrast equalization"),
+        CHAR_MATCHING("char matching"),
+        OUTPUT("output writing");
+
+        private final String description;
+
+        Stage(String description) {
+            this.description = description;
+        }
+    }
+
+    /**
+     * The counted events.
+     */
+    public enum Counter {
+        PIXELS_INDEXED("pixels indexed"),
+        TILES_AVERAGED("tiles averaged"),
+        CHARS_MATCHED("chars matched"),
+        GRID_CACHE_HITS("brightness grid cache hits"),
+        GRID_CACHE_MISSES("brightness grid cache misses"),
+        GLYPH_CACHE_HITS("glyph cache hits"),
+        GLYPH_CACHE_MISSES("glyph cache misses");
+
+        private final String description;
+
+        Counter(String description) {
+            this.description = description;
+        }
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+    private static final LongAdder[] stageNanos = adders(Stage.values().length);
+    private static final LongAdder[] stageCalls = adders(Stage.values().length);
+    private static final LongAdder[] counts = adders(Counter.values().length);
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts or stops collecting. What was collected so far is kept.
+     */
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Marks the start of a stage.
+     *
+     * @return the time to pass to stop, or 0 when disabled.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Marks the end of a stage, adding the time since start to it.
+     *
+     * @param stage the stage which ended.
+     * @param start the value start returned when the stage started.
+     */
+    public static void stop(Stage stage, long start) {
+        if (start == 0)
+            return;
+        stageNanos[stage.ordinal()].add(System.nanoTime() - start);
+        stageCalls[stage.ordinal()].increment();
+    }
+
+    /**
+     * Adds to a counter.
+     */
+    public static void count(Counter counter, long amount) {
+        if (enabled)
+            counts[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * Zeroes all the timers and counters.
+     */
+    public static void reset() {
+        for (LongAdder adder : stageNanos)
+            adder.reset();
+        for (LongAdder adder : stageCalls)
+            adder.reset();
+        for (LongAdder adder : counts)
+            adder.reset();
+    }
+
+    /**
+     * @return a table of the stages and counters, with the throughput of indexing and averaging.
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        if (!enabled)
+            report.append("(metrics are disabled)\n");
+        for (Stage stage : Stage.values())
+            report.append(String.format(Locale.ROOT, "%-22s %10.3f ms %8d calls%n", stage.description,
+                    millis(stage), stageCalls[stage.ordinal()].sum()));
+        for (Counter counter : Counter.values())
+            report.append(String.format(Locale.ROOT, "%-30s %12d%n", counter.description,
+                    counts[counter.ordinal()].sum()));
+        report.append(String.format(Locale.ROOT, "%-30s %12.1f%n", "indexed pixels/ms",
+                perMilli(Counter.PIXELS_INDEXED, Stage.BRIGHTNESS_INDEXING)));
+        report.append(String.format(Locale.ROOT, "%-30s %12.1f%n", "averaged tiles/ms",
+                perMilli(Counter.TILES_AVERAGED, Stage.BRIGHTNESS_AVERAGING)));
+        return report.toString();
+    }
+
+    /**
+     * @return the stages and counters as a JSON object, stage times in milliseconds.
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\"enabled\":").append(enabled).append(",\"stages\":{");
+        for (Stage stage : Stage.values()) {
+            if (stage.ordinal() > 0)
+                json.append(',');
+            json.append(String.format(Locale.ROOT, "\"%s\":{\"ms\":%.3f,\"calls\":%d}",
+                    jsonName(stage), millis(stage), stageCalls[stage.ordinal()].sum()));
+        }
+        json.append("},\"counters\":{");
+        for (Counter counter : Counter.values()) {
+            if (counter.ordinal() > 0)
+                json.append(',');
+            json.append('"').append(jsonName(counter)).append("\":").append(counts[counter.ordinal()].sum());
+        }
+        return json.append("}}").toString();
+    }
+
+    private static double millis(Stage stage) {
+        return stageNanos[stage.ordinal()].sum() / 1e6;
+    }
+
+    private static double perMilli(Counter counter, Stage stage) {
+        double millis = millis(stage);
+        return millis == 0 ? 0 : counts[counter.ordinal()].sum() / millis;
+    }
+
+    private static String jsonName(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static LongAdder[] adders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < length; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+}
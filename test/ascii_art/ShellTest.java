@@ -0,0 +1,123 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessGridCache;
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShellTest {
+    /*
+        a width that no power of two divides, so most numbers of chars in a row don't divide it either.
+     */
+    private static final int WIDTH = 1025;
+    private static final int HEIGHT = 16;
+    private static final Pattern WIDTH_SET = Pattern.compile("Width set to (\\d+)");
+    private static final Character[] CHARS = {' ', '.', 'o', '#'};
+
+    @Test
+    void initialSubImagesArePowersOfTwo() {
+        assertEquals(16, Shell.initialSubImageSize(WIDTH, WIDTH / HEIGHT));
+        assertEquals(16, Shell.initialSubImageSize(1024, 1));
+        assertEquals(2, Shell.initialSubImageSize(1, 1));
+        // a wide image keeps at least one char per its height of pixels
+        assertEquals(4, Shell.initialSubImageSize(1024, 200));
+        assertEquals(65, Shell.charsInRow(WIDTH, 16));
+        assertEquals(513, Shell.charsInRow(WIDTH, 2));
+    }
+
+    @Test
+    void resolutionDownMirrorsResolutionUp() {
+        String output = runShellOutput("res up\n".repeat(4) + "res down\n".repeat(4) + "exit\n");
+        assertEquals(List.of(129, 257, 513, 257, 129, 65), widths(output));
+        assertTrue(output.contains("You're using the maximal resolution"));
+        assertTrue(output.contains("You're using the minimal resolution"));
+
+        // going up from the initial resolution and back down returns to it
+        List<Integer> widths = widths(runShellOutput("res up\nres down\nres down\nexit\n"));
+        assertEquals(List.of(129, 65), widths);
+    }
+
+    @Test
+    void printedWidthsAreTheWidthsRendered() {
+        List<Integer> widths = widths(runShellOutput("res up\n".repeat(3) + "res down\n".repeat(3) + "exit\n"));
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(gradient(), "Monospaced");
+        for (int width : widths)
+            assertEquals(width, matcher.chooseChars(width, CHARS)[0].length, "width " + width);
+    }
+
+    @Test
+    void returningToAResolutionHitsTheGridCache() {
+        int initialWidth = Shell.charsInRow(WIDTH, Shell.initialSubImageSize(WIDTH, WIDTH / HEIGHT));
+        List<Integer> widths = widths(runShellOutput("res up\nres down\nexit\n"));
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(gradient(), "Monospaced");
+        BrightnessGridCache cache = new BrightnessGridCache(1 << 20);
+        matcher.setGridCache(cache);
+        matcher.chooseChars(initialWidth, CHARS);
+        matcher.chooseChars(widths.get(0), CHARS);
+        assertEquals(2, cache.size());
+        matcher.chooseChars(widths.get(1), CHARS);
+        assertEquals(2, cache.size(), "the grid of the initial resolution is reused");
+    }
+
+    /*
+        running a shell over the gradient with the given commands, returning what it printed.
+     */
+    private static String runShellOutput(String commands) {
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        try {
+            System.setIn(new ByteArrayInputStream(commands.getBytes(StandardCharsets.UTF_8)));
+            System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+            new Shell(gradient()).run();
+        } finally {
+            System.setIn(in);
+            System.setOut(out);
+        }
+        return printed.toString(StandardCharsets.UTF_8);
+    }
+
+    /*
+        the widths a shell reported, in order.
+     */
+    private static List<Integer> widths(String output) {
+        List<Integer> widths = new ArrayList<>();
+        Matcher matcher = WIDTH_SET.matcher(output);
+        while (matcher.find())
+            widths.add(Integer.parseInt(matcher.group(1)));
+        return widths;
+    }
+
+    private static Image gradient() {
+        return new Image() {
+            @Override
+            public Color getPixel(int x, int y) {
+                int grey = x * 255 / (WIDTH - 1);
+                return new Color(grey, grey, (y * 255) / (HEIGHT - 1));
+            }
+
+            @Override
+            public int getWidth() {
+                return WIDTH;
+            }
+
+            @Override
+            public int getHeight() {
+                return HEIGHT;
+            }
+        };
+    }
+}
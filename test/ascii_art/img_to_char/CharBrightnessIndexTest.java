@@ -0,0 +1,97 @@
+package ascii_art.img_to_char;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CharBrightnessIndexTest {
+    @Test
+    void agreesWithALinearScan() {
+        Random random = new Random(42);
+        for (int size : new int[]{2, 10, 95, 1000}) {
+            Character[] charSet = new Character[size];
+            double[] levels = new double[size];
+            for (int i = 0; i < size; i++) {
+                charSet[i] = (char) (' ' + i);
+                // glyph brightness comes in steps of 1/256, so equal levels are common
+                levels[i] = random.nextInt(257) / 256.0;
+            }
+            CharBrightnessIndex index = new CharBrightnessIndex(charSet, levels);
+            for (int i = 0; i < 1 << 14; i++) {
+                double query = random.nextDouble();
+                assertEquals(scan(query, charSet, levels), index.closestChar(query), "query " + query);
+            }
+            // the midpoints between levels, where the closest char changes
+            for (double low : levels)
+                for (double high : new double[]{low + 1 / 256.0, low + 2 / 256.0}) {
+                    double query = (low + high) / 2;
+                    assertEquals(scan(query, charSet, levels), index.closestChar(query), "query " + query);
+                }
+        }
+    }
+
+    @Test
+    void tiesGoToTheFirstCharOfTheSet() {
+        // 'b' and 'c' have the same level, and 0.5 is as close to 'a' as to 'd'
+        Character[] charSet = {'d', 'b', 'c', 'a'};
+        double[] levels = {0.75, 0.5, 0.5, 0.25};
+        CharBrightnessIndex index = new CharBrightnessIndex(charSet, levels);
+        assertEquals('b', index.closestChar(0.5));
+        assertEquals('d', index.closestChar(0.625));
+        assertEquals('b', index.closestChar(0.375));
+
+        Character[] reversed = {'a', 'c', 'b', 'd'};
+        double[] reversedLevels = {0.25, 0.5, 0.5, 0.75};
+        CharBrightnessIndex reversedIndex = new CharBrightnessIndex(reversed, reversedLevels);
+        assertEquals('c', reversedIndex.closestChar(0.5));
+        assertEquals('a', reversedIndex.closestChar(0.375));
+        assertEquals('c', reversedIndex.closestChar(0.625));
+        for (double query = 0; query <= 1; query += 1 / 512.0) {
+            assertEquals(scan(query, charSet, levels), index.closestChar(query), "query " + query);
+            assertEquals(scan(query, reversed, reversedLevels), reversedIndex.closestChar(query), "query " + query);
+        }
+    }
+
+    @Test
+    void queriesOutsideTheRangeGetTheExtremeChars() {
+        Character[] charSet = {'#', 'o', '.', ' '};
+        double[] levels = {0.1, 0.4, 0.7, 0.9};
+        CharBrightnessIndex index = new CharBrightnessIndex(charSet, levels);
+        for (double query : new double[]{-1, -Double.MIN_VALUE, -1e300, Double.NEGATIVE_INFINITY})
+            assertEquals('#', index.closestChar(query), "query " + query);
+        for (double query : new double[]{1 + 1e-9, 2, 1e300, Double.POSITIVE_INFINITY})
+            assertEquals(' ', index.closestChar(query), "query " + query);
+    }
+
+    @Test
+    void aSingleCharIsAlwaysChosen() {
+        CharBrightnessIndex index = new CharBrightnessIndex(new Character[]{'x'}, new double[]{0.3});
+        for (double query : new double[]{-1, 0, 0.3, 0.5, 1, 2})
+            assertEquals('x', index.closestChar(query), "query " + query);
+    }
+
+    @Test
+    void rejectsMismatchedOrEmptySets() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CharBrightnessIndex(new Character[0], new double[0]));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CharBrightnessIndex(new Character[]{'a', 'b'}, new double[]{0.5}));
+    }
+
+    /*
+        the lookup BrightnessImgCharMatcher did before the index: the first char of the smallest distance.
+     */
+    private static char scan(double brightness, Character[] charSet, double[] levels) {
+        double delta = Double.MAX_VALUE;
+        int deltaCharIndex = 0;
+        for (int i = 0; i < levels.length; i++) {
+            if (Math.abs(brightness - levels[i]) < delta) {
+                delta = Math.abs(brightness - levels[i]);
+                deltaCharIndex = i;
+            }
+        }
+        return charSet[deltaCharIndex];
+    }
+}
@@ -0,0 +1,82 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ErrorDiffusionTest {
+    private static final Dithering[] DIFFUSIONS = {Dithering.FLOYD_STEINBERG, Dithering.ATKINSON};
+    private static final int[] PARALLELISMS = {2, 3, 4, 8};
+
+    @Test
+    void parallelMatchesAreTheSequentialMatch() {
+        // more columns than a row announces progress in, so the rows wait on each other mid row
+        double[][] grid = noise(150, 200);
+        CharBrightnessIndex charIndex = new CharBrightnessIndex(new Character[]{' ', '.', ':', 'o', '#'},
+                new double[]{1, 0.8, 0.55, 0.3, 0.05});
+        for (Dithering dithering : DIFFUSIONS) {
+            char[][] sequential = ErrorDiffusion.match(grid, charIndex, dithering, null, 1);
+            for (int parallelism : PARALLELISMS) {
+                ForkJoinPool pool = new ForkJoinPool(parallelism);
+                try {
+                    char[][] parallel = ErrorDiffusion.match(grid, charIndex, dithering, pool, parallelism);
+                    assertArrayEquals(sequential, parallel, dithering + " with " + parallelism + " threads");
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+    }
+
+    @Test
+    void matcherRendersTheSameCharsWithAnyParallelism() {
+        Image img = noiseImage(512, 384);
+        Character[] chars = {' ', '.', 'o', '#'};
+        for (Dithering dithering : DIFFUSIONS) {
+            BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(img, "Monospaced", 1);
+            matcher.setGridCache(null);
+            matcher.setDithering(dithering);
+            char[][] sequential = matcher.chooseChars(256, chars);
+            for (int parallelism : PARALLELISMS) {
+                matcher.setParallelism(parallelism);
+                assertArrayEquals(sequential, matcher.chooseChars(256, chars),
+                        dithering + " with " + parallelism + " threads");
+            }
+        }
+    }
+
+    private static double[][] noise(int rows, int cols) {
+        Random random = new Random(7);
+        double[][] grid = new double[rows][cols];
+        for (int row = 0; row < rows; row++)
+            for (int col = 0; col < cols; col++)
+                grid[row][col] = (row + col) / (double) (rows + cols) * 0.8 + random.nextDouble() * 0.2;
+        return grid;
+    }
+
+    private static Image noiseImage(int width, int height) {
+        double[][] grid = noise(height, width);
+        return new Image() {
+            @Override
+            public Color getPixel(int x, int y) {
+                int grey = (int) (grid[y][x] * 255);
+                return new Color(grey, grey, grey);
+            }
+
+            @Override
+            public int getWidth() {
+                return width;
+            }
+
+            @Override
+            public int getHeight() {
+                return height;
+            }
+        };
+    }
+}
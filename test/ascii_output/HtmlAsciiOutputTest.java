@@ -0,0 +1,118 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HtmlAsciiOutputTest {
+    private static final String FONT = "Courier New";
+    /*
+        a small frame with the chars html escapes, a non-ASCII char of the first page of chars and one
+        of a later page, and rows of a single color, of runs of colors and of a color per char.
+     */
+    private static final char[][] CHARS = {
+            "<a&b>".toCharArray(),
+            "&&<<>".toCharArray(),
+            " .o#é".toCharArray(),
+            "██ <>".toCharArray()};
+    private static final int[][] COLORS = {
+            {0x102030, 0x102030, 0x102030, 0x102030, 0x102030},
+            {0xFF0000, 0xFF0000, 0x00FF00, 0x00FF00, 0xFF0000},
+            {0x000000, 0x0000FF, 0xABCDEF, 0x000001, 0xFFFFFF},
+            {0x808080, 0x808080, 0x808080, 0x7F7F7F, 0x7F7F7F}};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void blackCharsAreWrittenAsBefore() throws IOException {
+        Path expected = dir.resolve("expected.html");
+        Path actual = dir.resolve("actual.html");
+        writeBaseline(expected, CHARS, null);
+        new HtmlAsciiOutput(actual.toString(), FONT).output(CHARS);
+        assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(actual));
+
+        Path colorOutput = dir.resolve("color.html");
+        new HtmlColorAsciiOutput(colorOutput.toString(), FONT).output(CHARS, null);
+        assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(colorOutput));
+    }
+
+    @Test
+    void coloredCharsAreWrittenAsBefore() throws IOException {
+        Path expected = dir.resolve("expected.html");
+        Path actual = dir.resolve("actual.html");
+        writeBaseline(expected, CHARS, COLORS);
+        new HtmlColorAsciiOutput(actual.toString(), FONT).output(CHARS, COLORS);
+        assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(actual));
+    }
+
+    @Test
+    void streamsGetTheBytesOfTheFile() throws IOException {
+        for (int[][] colors : new int[][][]{COLORS, null}) {
+            Path expected = dir.resolve("expected.html");
+            writeBaseline(expected, CHARS, colors);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            HtmlColorAsciiOutput.write(out, FONT, CHARS, colors);
+            assertArrayEquals(Files.readAllBytes(expected), out.toByteArray());
+        }
+    }
+
+    /*
+        the output of the writers before rows were written through a FileChannel: the document written by
+        a FileWriter, char by char, in a span for every run of chars of the same color.
+     */
+    private static void writeBaseline(Path path, char[][] chars, int[][] colors) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(path.toFile()))) {
+            writer.write(String.format(
+                    "<!DOCTYPE html>\n" +
+                    "<html>\n" +
+                    "<body style=\"" +
+                        "\tCOLOR:#000000;" +
+                        "\tTEXT-ALIGN:center;" +
+                        "\tFONT-SIZE:1px;\">\n" +
+                    "<p style=\"" +
+                        "\twhite-space:pre;" +
+                        "\tFONT-FAMILY:%s;" +
+                        "\tFONT-SIZE:%frem;" +
+                        "\tLETTER-SPACING:0.15em;" +
+                        "\tLINE-HEIGHT:%fem;\">\n",
+                    FONT, 150.0 / chars[0].length, 0.8));
+            for (int y = 0; y < chars.length; y++) {
+                int x = 0;
+                while (x < chars[y].length) {
+                    if (colors == null) {
+                        writer.write(htmlRep(chars[y][x++]));
+                        continue;
+                    }
+                    int color = colors[y][x];
+                    writer.write(String.format("<span style=\"color:#%06x\">", color));
+                    for (; x < chars[y].length && colors[y][x] == color; x++)
+                        writer.write(htmlRep(chars[y][x]));
+                    writer.write("</span>");
+                }
+                writer.newLine();
+            }
+            writer.write(
+                    "</p>\n" +
+                    "</body>\n" +
+                    "</html>\n");
+        }
+    }
+
+    private static String htmlRep(char c) {
+        switch (c) {
+            case '<': return "&lt;";
+            case '>': return "&gt;";
+            case '&': return "&amp;";
+            default:  return String.valueOf(c);
+        }
+    }
+}